@@ -0,0 +1,892 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The AssemblerCore class is the LC-2K assembler as a reusable library:
+ * source in, AssemblyResult (machine code words, labels, diagnostics) out.
+ *
+ * An AssemblerCore only holds its settings, so one instance can be shared by
+ * any number of threads, and every assemble call is independent. Nothing is
+ * boxed: machine code, fixups and the symbol table are kept in int arrays.
+ *
+ * How a source is assembled:
+ *  - the lines are split into chunks of CHUNK_LINES lines; every chunk is
+ *    tokenized by a hand-written scanner (no regex) and encoded into its own
+ *    int buffer, in parallel on the ForkJoin pool when there is more than one chunk
+ *  - label operands are left as 0 and recorded in the chunk's fixup table
+ *  - the per-chunk label lists are merged, in file order, into the symbol table
+ *    (this is where label errors are found, so their order is always the same)
+ *  - every chunk patches its fixups from the symbol table (again in parallel)
+ *
+ * Two modes:
+ *  - strict (Assembler): labels are validated, duplicates are errors, register
+ *    numbers and offsets are range-checked, operators are case-insensitive,
+ *    comments start with '#' or "//"
+ *  - lenient (MiniAssembler): any non-operator first field is a label (a later
+ *    definition replaces an earlier one), operators are lower-case only, only '#'
+ *    starts a comment, and numbers are truncated to the width of their field
+ */
+public class AssemblerCore {
+    // Define 7 as a maximum register number available as per the given condition (tip)
+    private static final int MAX_REG_NUM = 7;
+    // Define offsetField range as -32768 to 32767, since offsetField is allowed 16-bit at most
+    private static final int MAX_OFFSET_VALUE = 32767; // 16-bit signed
+    private static final int MIN_OFFSET_VALUE = -32768; // 16-bit signed
+
+    // Opcode of .fill (a pseudo operation), and "not an instruction/operator"
+    private static final int FILL = -1;
+    private static final int NOT_AN_OPCODE = -2;
+    // Returned by parseNumber when a field is not a number
+    private static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    // Kinds of fixups (how the label address is patched into the machine code)
+    private static final int FIXUP_OFFSET = 0;   // lw/sw offsetField: label address
+    private static final int FIXUP_BRANCH = 1;   // beq offsetField: label address - (address + 1)
+    private static final int FIXUP_FILL = 2;     // .fill value: label address
+
+    // Sources with more lines than this are assembled in parallel chunks
+    private static final int CHUNK_LINES = 4096;
+
+    private final boolean lenient;
+
+    /** Constructor: a strict assembler (the rules of the Assembler CLI) */
+    public AssemblerCore() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param lenient true for the relaxed rules of the MiniAssembler CLI
+     */
+    public AssemblerCore(boolean lenient) {
+        this.lenient = lenient;
+    }
+
+    /**
+     * Assembles a source held in memory.
+     *
+     * @param source Assembly language program
+     * @return the machine code and diagnostics
+     */
+    public AssemblyResult assemble(String source) {
+        try {
+            return assemble(new BufferedReader(new StringReader(source)));
+        } catch (IOException e) {
+            // A StringReader does not fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Assembles a source read line by line.
+     *
+     * @param reader Assembly language program
+     * @return the machine code and diagnostics
+     * @throws IOException when the source cannot be read
+     */
+    public AssemblyResult assemble(BufferedReader reader) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return assemble(lines);
+    }
+
+    /**
+     * Assembles a source given as lines.
+     *
+     * @param lines Assembly language program, one line per element
+     * @return the machine code and diagnostics
+     */
+    public AssemblyResult assemble(List<String> lines) {
+        return assemble(lines, null, null, null);
+    }
+
+    /**
+     * Assembles a source incrementally: lines that are unchanged since the
+     * previous version (the common prefix and suffix) replay their previous scan
+     * instead of being tokenized and encoded again. Every label use is patched
+     * again, so the result is the same as a full assembly.
+     *
+     * @param lines    Assembly language program, one line per element
+     * @param previous Scan of the previous version (AssemblyResult.getSourceScan()), or null
+     * @return the machine code and diagnostics, with the SourceScan of this version
+     */
+    public AssemblyResult assemble(List<String> lines, SourceScan previous) {
+        SourceScan scan = new SourceScan(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            scan.hashes[i] = SourceScan.hash(lines.get(i));
+        }
+        int[] reuse = previous == null ? null : scan.align(previous);
+        return assemble(lines, scan, previous, reuse);
+    }
+
+    /**
+     * Assembles a source, optionally recording and replaying line scans.
+     *
+     * @param lines    Assembly language program
+     * @param scan     Receives the scan of every line (null = do not record)
+     * @param previous Scan to replay lines from (null = scan every line)
+     * @param reuse    For every line, its index in previous, or -1
+     * @return the machine code and diagnostics
+     */
+    private AssemblyResult assemble(List<String> lines, SourceScan scan, SourceScan previous, int[] reuse) {
+        // Tokenize and encode every chunk
+        int chunkCount = Math.max(1, (lines.size() + CHUNK_LINES - 1) / CHUNK_LINES);
+        Chunk[] chunks = new Chunk[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = new Chunk(lines, i * CHUNK_LINES, Math.min(lines.size(), (i + 1) * CHUNK_LINES),
+                    scan, previous, reuse);
+        }
+        runChunks(chunks, null);
+
+        // Merge the chunk label tables in file order: absolute label addresses,
+        // and the label errors in the order a sequential scan finds them
+        SymbolTable symbols = new SymbolTable();
+        List<AssemblyDiagnostic> diagnostics = new ArrayList<>();
+        int base = 0;
+        for (Chunk chunk : chunks) {
+            chunk.base = base;
+            for (int i = 0; i < chunk.labelCount; i++) {
+                String message = defineLabel(symbols, chunk.labels[i], base + chunk.labelAddress[i]);
+                if (message != null) {
+                    diagnostics.add(new AssemblyDiagnostic(AssemblyDiagnostic.Kind.LABEL,
+                            chunk.labelLine[i], base + chunk.labelAddress[i], message));
+                }
+            }
+            base += chunk.length;
+        }
+
+        // Every label is known now: patch the label references
+        runChunks(chunks, symbols);
+
+        // Concatenate the chunks and their encoding errors (both in address order)
+        int[] words = new int[base];
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.code, 0, words, chunk.base, chunk.length);
+            chunk.addErrors(diagnostics);
+        }
+        return new AssemblyResult(words, base, symbols.names(), symbols.addresses(), diagnostics, scan);
+    }
+
+    /**
+     * Run one phase (scan, or resolve with the symbol table) on every chunk,
+     * on the ForkJoin pool when there is more than one chunk (and more than one CPU).
+     */
+    private static void runChunks(Chunk[] chunks, SymbolTable symbols) {
+        if (chunks.length == 1 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            for (Chunk chunk : chunks) {
+                chunk.run(symbols);
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(new ChunkTask(chunks, 0, chunks.length, symbols));
+        }
+    }
+
+    /**
+     * Check a label and add it to the symbol table
+     *
+     * @param symbols symbol table
+     * @param label label defined on the line
+     * @param address address of the line
+     * @return error message, or null if the label was defined
+     */
+    private String defineLabel(SymbolTable symbols, String label, int address) {
+        if (lenient) {
+            // A later definition replaces an earlier one
+            symbols.put(label, address);
+            return null;
+        }
+        // If the symbol table already contains the label: "[Error] Duplicate label: "
+        if (symbols.get(label) >= 0) {
+            return "[Error] Duplicate label: " + label;
+        }
+        // If the label's length is more than 6 characters: "[Error] Label is too long: "
+        if (label.length() > 6) {
+            return "[Error] Label is too long: " + label;
+        }
+        // If the label doesn't start with an alphabetic character or is not alphanumeric:
+        // "[Error] The label starts with invalid character: "
+        if (!isValidLabel(label)) {
+            return "[Error] The label starts with invalid character: " + label;
+        }
+        // A valid label starts with a letter, so it can never be a number,
+        // and readAndParse never takes a reserved opcode as a label
+        symbols.put(label, address);
+        return null;
+    }
+
+    /**
+     * Computes the value a label operand stands for
+     *
+     * @param targetAddress address of the label
+     * @param address address of the line using it
+     * @param kind FIXUP_OFFSET, FIXUP_BRANCH or FIXUP_FILL
+     * @return the value to put in the machine code
+     * @throws IllegalArgumentException when the offset is out of range
+     */
+    private int labelValue(int targetAddress, int address, int kind) throws IllegalArgumentException {
+        switch (kind) {
+            case FIXUP_OFFSET:
+                checkOffsetBounds(targetAddress);
+                return targetAddress;
+            case FIXUP_BRANCH:
+                // BEQ jumps relative to the next line
+                int offset = targetAddress - (address + 1);
+                checkOffsetBounds(offset);
+                return offset;
+            default:
+                return targetAddress;
+        }
+    }
+
+    /** Splits the chunks in halves until one chunk is left, and runs one phase on it */
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;   // never serialized; RecursiveAction is Serializable
+
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+        private final SymbolTable symbols;
+
+        ChunkTask(Chunk[] chunks, int from, int to, SymbolTable symbols) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.symbols = symbols;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks[from].run(symbols);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(chunks, from, middle, symbols), new ChunkTask(chunks, middle, to, symbols));
+            }
+        }
+    }
+
+    /**
+     * One chunk of source lines with its own code buffer, label list, fixup table
+     * and errors. Addresses inside a chunk are local (0 = first word of the chunk)
+     * until base is known.
+     */
+    private final class Chunk {
+        private final List<String> lines;
+        private final int firstLine;
+        private final int lastLine;       // exclusive
+        private final SourceScan scan;    // records every line's scan (or null)
+        private final SourceScan previous; // scans to replay (or null)
+        private final int[] reuse;        // line -> line in previous, or -1
+
+        int base;                         // absolute address of the chunk's first word
+
+        // Machine code of the chunk
+        int[] code = new int[256];
+        int length;
+
+        // Labels defined in the chunk, in order, with their local addresses and source lines
+        String[] labels = new String[64];
+        int[] labelAddress = new int[64];
+        int[] labelLine = new int[64];
+        int labelCount;
+
+        // Fixup table: label uses, patched once every label is known
+        private int[] fixupAddress = new int[64];
+        private int[] fixupKind = new int[64];
+        private int[] fixupLine = new int[64];
+        private String[] fixupLabel = new String[64];
+        private int fixupCount;
+
+        // Encoding errors: local address -> message (null = no error)
+        private String[] errors;
+        private int[] errorLine;
+
+        Chunk(List<String> lines, int firstLine, int lastLine, SourceScan scan, SourceScan previous, int[] reuse) {
+            this.lines = lines;
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+            this.scan = scan;
+            this.previous = previous;
+            this.reuse = reuse;
+        }
+
+        /** Runs one phase on this chunk: scan (symbols == null) or resolve */
+        void run(SymbolTable symbols) {
+            if (symbols == null) {
+                scan();
+            } else {
+                resolve(symbols);
+            }
+        }
+
+        /** Tokenizes and encodes every line of the chunk */
+        private void scan() {
+            // Fields of the current line: label, opcode, arg0, arg1, arg2
+            String[] fields = new String[5];
+
+            for (int lineIndex = firstLine; lineIndex < lastLine; lineIndex++) {
+                // An unchanged line (incremental assembly) is not scanned again
+                if (reuse != null && reuse[lineIndex] >= 0) {
+                    replay(reuse[lineIndex], lineIndex);
+                    continue;
+                }
+
+                // Parse each line for individual data fields as per the format:
+                // label<white>instruction<white>field0<white>field1<white>field2<white>comments
+                // If there is an empty data field, continue (no error detected)
+                if (!readAndParse(lines.get(lineIndex), fields)) {
+                    if (scan != null) {
+                        scan.kinds[lineIndex] = SourceScan.NO_CODE;
+                    }
+                    continue;
+                }
+
+                // The address of this line is the number of lines emitted so far
+                int address = length;
+
+                // If there is a label, remember it for the symbol table
+                if (!fields[0].isEmpty()) {
+                    addLabel(fields[0], address, lineIndex + 1);
+                }
+
+                int fixupsBefore = fixupCount;
+                int machineCode = 0;
+                byte kind = SourceScan.CODE;
+                try {
+                    machineCode = encode(fields, address, lineIndex + 1);
+                } catch (IllegalArgumentException e) {
+                    addError(address, lineIndex + 1, e.getMessage());
+                    kind = SourceScan.ERROR;
+                }
+                emit(machineCode);
+
+                if (scan != null) {
+                    boolean usesLabel = fixupCount > fixupsBefore;
+                    scan.kinds[lineIndex] = kind;
+                    scan.words[lineIndex] = machineCode;
+                    scan.labels[lineIndex] = fields[0].isEmpty() ? null : fields[0];
+                    scan.fixupKinds[lineIndex] = usesLabel ? (byte) fixupKind[fixupsBefore] : -1;
+                    scan.fixupLabels[lineIndex] = usesLabel ? fixupLabel[fixupsBefore] : null;
+                }
+            }
+        }
+
+        /** Repeats the scan of an unchanged line from the previous version */
+        private void replay(int previousLine, int lineIndex) {
+            scan.hashes[lineIndex] = previous.hashes[previousLine];
+            scan.kinds[lineIndex] = previous.kinds[previousLine];
+            scan.words[lineIndex] = previous.words[previousLine];
+            scan.labels[lineIndex] = previous.labels[previousLine];
+            scan.fixupKinds[lineIndex] = previous.fixupKinds[previousLine];
+            scan.fixupLabels[lineIndex] = previous.fixupLabels[previousLine];
+            if (previous.kinds[previousLine] == SourceScan.NO_CODE) {
+                return;
+            }
+
+            int address = length;
+            if (previous.labels[previousLine] != null) {
+                addLabel(previous.labels[previousLine], address, lineIndex + 1);
+            }
+            if (previous.fixupKinds[previousLine] >= 0) {
+                addFixup(address, previous.fixupKinds[previousLine], lineIndex + 1, previous.fixupLabels[previousLine]);
+            }
+            emit(previous.words[previousLine]);
+        }
+
+        /** Patches every label use; a failing one becomes the line's encoding error */
+        private void resolve(SymbolTable symbols) {
+            for (int i = 0; i < fixupCount; i++) {
+                int address = fixupAddress[i];
+                try {
+                    // If the symbol table doesn't contain the label, meaning, the label is undefined:
+                    // "[Error] Undefined Label: " with the said label
+                    int targetAddress = symbols.get(fixupLabel[i]);
+                    if (targetAddress < 0) {
+                        throw new IllegalArgumentException("[Error] Undefined Label: " + fixupLabel[i]);
+                    }
+                    int value = labelValue(targetAddress, base + address, fixupKind[i]);
+                    code[address] |= fixupKind[i] == FIXUP_FILL ? value : value & 0xFFFF;
+                } catch (IllegalArgumentException e) {
+                    code[address] = 0;
+                    addError(address, fixupLine[i], e.getMessage());
+                }
+            }
+        }
+
+        /** Adds this chunk's encoding errors, in address order, with absolute addresses */
+        void addErrors(List<AssemblyDiagnostic> diagnostics) {
+            if (errors == null) {
+                return;
+            }
+            // errors only grows up to the last erroring address
+            int end = Math.min(length, errors.length);
+            for (int address = 0; address < end; address++) {
+                if (errors[address] != null) {
+                    diagnostics.add(new AssemblyDiagnostic(AssemblyDiagnostic.Kind.ENCODING,
+                            errorLine[address], base + address, errors[address]));
+                }
+            }
+        }
+
+        /**
+         * Convert one parsed line into machine code.
+         * Label operands are left as 0 and recorded as fixups.
+         *
+         * @param fields label, opcode, arg0, arg1, arg2 of the line
+         * @param address local address of the line
+         * @param line source line number
+         * @return machine code of the line
+         * @throws IllegalArgumentException when the line cannot be encoded
+         */
+        private int encode(String[] fields, int address, int line) throws IllegalArgumentException {
+            // opcode (instruction) is stored in the second field (field[1])
+            // arg0 (field0), arg1 (field1) and arg2 (field2) are stored in the following fields
+            String opcode = fields[1];
+            String arg0 = fields[2];
+            String arg1 = fields[3];
+            String arg2 = fields[4];
+
+            // If there is no instruction/operator mapped to the opcode: "[Error] Invalid instruction: "
+            int op = opcodeOf(opcode);
+            if (op == NOT_AN_OPCODE) {
+                throw new IllegalArgumentException("[Error] Invalid instruction: " + opcode);
+            }
+
+            // Bit 24-22 are 3-bit Opcode
+            int machineCode = op << 22;
+
+            switch (op) {
+                // R-type instruction (ADD, NAND): regA, regB, destReg
+                case 0:
+                case 1:
+                    machineCode |= parseRegister(arg0) << 19; // Bit 21-19
+                    machineCode |= parseRegister(arg1) << 16; // Bit 18-16
+                    machineCode |= parseRegister(arg2);       // Bit 2-0
+                    break;
+
+                // I-type instruction (LW, SW): regA, regB, offsetField (number or label address)
+                case 2:
+                case 3:
+                    machineCode |= parseRegister(arg0) << 19;
+                    machineCode |= parseRegister(arg1) << 16;
+                    machineCode |= parseOffset(arg2, address, line, FIXUP_OFFSET) & 0xFFFF;
+                    break;
+
+                // I-type instruction [PC-Relative]: BEQ regA, regB, offsetField (number or target label)
+                case 4:
+                    machineCode |= parseRegister(arg0) << 19;
+                    machineCode |= parseRegister(arg1) << 16;
+                    machineCode |= parseOffset(arg2, address, line, FIXUP_BRANCH) & 0xFFFF;
+                    break;
+
+                // J-type instruction (JALR): regA, regB
+                case 5:
+                    machineCode |= parseRegister(arg0) << 19;
+                    machineCode |= parseRegister(arg1) << 16;
+                    break;
+
+                // O-type instruction (HALT, NOOP) doesn't require any input
+                case 6:
+                case 7:
+                    break;
+
+                // .fill stores field0 (number or label address) as the machine code
+                default:
+                    machineCode = parseOffset(arg0, address, line, FIXUP_FILL);
+                    break;
+            }
+            return machineCode;
+        }
+
+        /**
+         * Retrieve the offsetField / .fill value of a line.
+         * Numbers are used directly; a label is added to the fixup table and 0 is returned.
+         *
+         * @param arg input field
+         * @param address local address of the line
+         * @param line source line number
+         * @param kind FIXUP_OFFSET, FIXUP_BRANCH or FIXUP_FILL
+         * @return the value to put in the machine code
+         * @throws IllegalArgumentException when the value is illegal
+         */
+        private int parseOffset(String arg, int address, int line, int kind) throws IllegalArgumentException {
+            long number = parseNumber(arg);
+            if (number == NOT_A_NUMBER) {
+                // The field is a symbolic address: patch it once every label is known
+                addFixup(address, kind, line, arg);
+                return 0;
+            }
+            // Check whether the value is in range with 16-bit offset value
+            // (.fill accepts any 32-bit value)
+            if (kind != FIXUP_FILL) {
+                checkOffsetBounds((int) number);
+            }
+            return (int) number;
+        }
+
+        /** Append one word to the code buffer, growing it when full */
+        private void emit(int machineCode) {
+            if (length == code.length) {
+                int[] grown = new int[code.length * 2];
+                System.arraycopy(code, 0, grown, 0, length);
+                code = grown;
+            }
+            code[length++] = machineCode;
+        }
+
+        /** Append one label definition, growing the list when full */
+        private void addLabel(String label, int address, int line) {
+            if (labelCount == labels.length) {
+                int size = labelCount * 2;
+                String[] grownLabels = new String[size];
+                int[] grownAddress = new int[size];
+                int[] grownLine = new int[size];
+                System.arraycopy(labels, 0, grownLabels, 0, labelCount);
+                System.arraycopy(labelAddress, 0, grownAddress, 0, labelCount);
+                System.arraycopy(labelLine, 0, grownLine, 0, labelCount);
+                labels = grownLabels;
+                labelAddress = grownAddress;
+                labelLine = grownLine;
+            }
+            labels[labelCount] = label;
+            labelAddress[labelCount] = address;
+            labelLine[labelCount] = line;
+            labelCount++;
+        }
+
+        /** Append one entry to the fixup table, growing it when full */
+        private void addFixup(int address, int kind, int line, String label) {
+            if (fixupCount == fixupAddress.length) {
+                int size = fixupCount * 2;
+                int[] grownAddress = new int[size];
+                int[] grownKind = new int[size];
+                int[] grownLine = new int[size];
+                String[] grownLabel = new String[size];
+                System.arraycopy(fixupAddress, 0, grownAddress, 0, fixupCount);
+                System.arraycopy(fixupKind, 0, grownKind, 0, fixupCount);
+                System.arraycopy(fixupLine, 0, grownLine, 0, fixupCount);
+                System.arraycopy(fixupLabel, 0, grownLabel, 0, fixupCount);
+                fixupAddress = grownAddress;
+                fixupKind = grownKind;
+                fixupLine = grownLine;
+                fixupLabel = grownLabel;
+            }
+            fixupAddress[fixupCount] = address;
+            fixupKind[fixupCount] = kind;
+            fixupLine[fixupCount] = line;
+            fixupLabel[fixupCount] = label;
+            fixupCount++;
+        }
+
+        /** Record the encoding error of one line (errors are rare: the table is made on demand) */
+        private void addError(int address, int line, String message) {
+            if (errors == null || address >= errors.length) {
+                int size = Math.max(code.length, address + 1);
+                String[] grownErrors = new String[size];
+                int[] grownLine = new int[size];
+                if (errors != null) {
+                    System.arraycopy(errors, 0, grownErrors, 0, errors.length);
+                    System.arraycopy(errorLine, 0, grownLine, 0, errorLine.length);
+                }
+                errors = grownErrors;
+                errorLine = grownLine;
+            }
+            errors[address] = message;
+            errorLine[address] = line;
+        }
+    }
+
+    /**
+     * Split one line into its data fields with a single scan
+     * (same result as trimming, cutting the comment, and splitting on whitespace)
+     *
+     * @param line read line from the input
+     * @param fields receives label, opcode, arg0, arg1, arg2 (missing fields are empty)
+     * @return false if the line has no assembly language code to be converted
+     */
+    private boolean readAndParse(String line, String[] fields) {
+        // Trim: skip characters up to and including space at both ends
+        int start = 0;
+        int end = line.length();
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        // Empty lines and comment lines have nothing to convert
+        if (start == end || line.charAt(start) == '#' || (!lenient && line.startsWith("//", start))) {
+            return false;
+        }
+
+        // Cut the comment: a '#' if there is one, otherwise a "//" (strict mode only)
+        int commentIndex = line.indexOf('#', start);
+        if (commentIndex >= end) {
+            commentIndex = -1;
+        }
+        if (commentIndex == -1 && !lenient) {
+            commentIndex = line.indexOf("//", start);
+            if (commentIndex + 2 > end) {
+                commentIndex = -1;
+            }
+        }
+        if (commentIndex != -1) {
+            end = commentIndex;
+            while (end > start && line.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            if (start == end) {
+                return false;
+            }
+        }
+
+        // Split into whitespace-separated tokens (only the first five matter)
+        String[] parts = new String[5];
+        int count = 0;
+        int i = start;
+        while (i < end && count < parts.length) {
+            int tokenStart = i;
+            while (i < end && !isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            parts[count++] = line.substring(tokenStart, i);
+            while (i < end && isWhitespace(line.charAt(i))) {
+                i++;
+            }
+        }
+
+        // If the first token is not an instruction/operator, it is the label
+        int startIndex = opcodeOf(parts[0]) == NOT_AN_OPCODE ? 1 : 0;
+        fields[0] = startIndex == 1 ? parts[0] : "";
+        for (int field = 1; field < fields.length; field++) {
+            int part = startIndex + field - 1;
+            fields[field] = part < count ? parts[part] : "";
+        }
+        return true;
+    }
+
+    /** @return true for the characters split("\\s+") splits on */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Look up the instruction/operator of a field
+     * (case-insensitive in strict mode, lower-case only in lenient mode)
+     *
+     * @param field input field
+     * @return opcode (FILL for .fill), or NOT_AN_OPCODE
+     */
+    private int opcodeOf(String field) {
+        // Every operator is 2 to 5 characters long: skip anything else
+        int length = field.length();
+        if (length < 2 || length > 5) {
+            return NOT_AN_OPCODE;
+        }
+        switch (lenient ? field : field.toLowerCase()) {
+            case "add":   return 0;
+            case "nand":  return 1;
+            case "lw":    return 2;
+            case "sw":    return 3;
+            case "beq":   return 4;
+            case "jalr":  return 5;
+            case "halt":  return 6;
+            case "noop":  return 7;
+            case ".fill": return FILL;
+            default:      return NOT_AN_OPCODE;
+        }
+    }
+
+    /**
+     * Check the label format: a letter followed by letters and digits
+     *
+     * @param label label to check
+     * @return whether the label is well-formed
+     */
+    private static boolean isValidLabel(String label) {
+        char first = label.charAt(0);
+        if (!((first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z'))) {
+            return false;
+        }
+        for (int i = 1; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieve and parse the register number from input field
+     *
+     * @param arg input register field
+     * @return register number
+     * @throws IllegalArgumentException when the input register is illegal
+     */
+    private int parseRegister(String arg) throws IllegalArgumentException {
+        // If the input argument is not a number, or (strict mode) the number is less than zero,
+        // or more than the defined maximum number of register available:
+        // "[Error] Invalid register value: " with the said argument
+        long regNum = parseNumber(arg);
+        if (regNum == NOT_A_NUMBER || (!lenient && (regNum < 0 || regNum > MAX_REG_NUM))) {
+            throw new IllegalArgumentException("[Error] Invalid register value: " + arg);
+        }
+        return (int) regNum & MAX_REG_NUM;
+    }
+
+    /**
+     * Check the range of the input offset value (strict mode only)
+     *
+     * @param offset input offset field value
+     * @throws IllegalArgumentException when the input offset field is illegal
+     */
+    private void checkOffsetBounds(int offset) throws IllegalArgumentException {
+        // If the offset value is less than -32768 or more than 32767:
+        // "[Error] Invalid offset value range (-32768 to 32767): " with the said offset value
+        if (!lenient && (offset < MIN_OFFSET_VALUE || offset > MAX_OFFSET_VALUE)) {
+            throw new IllegalArgumentException("[Error] Invalid offset value range (-32768 to 32767): " + offset);
+        }
+    }
+
+    /**
+     * Parse a field as a number, accepting exactly what Integer.parseInt accepts
+     *
+     * @param str input field
+     * @return the number, or NOT_A_NUMBER
+     */
+    private static long parseNumber(String str) {
+        // An empty string is not a number
+        int length = str.length();
+        if (length == 0) {
+            return NOT_A_NUMBER;
+        }
+
+        // Optional sign (a sign alone is not a number)
+        int i = 0;
+        char first = str.charAt(0);
+        boolean negative = first == '-';
+        if (negative || first == '+') {
+            if (length == 1) {
+                return NOT_A_NUMBER;
+            }
+            i = 1;
+        }
+
+        // ASCII digits are parsed here; a non-ASCII character (possibly another
+        // Unicode digit) leaves the whole field to Integer.parseInt
+        long value = 0;
+        for (; i < length; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x80) {
+                try {
+                    return Integer.parseInt(str);
+                } catch (NumberFormatException e) {
+                    return NOT_A_NUMBER;
+                }
+            }
+            if (c < '0' || c > '9') {
+                return NOT_A_NUMBER;
+            }
+            // Saturate just above the int range (keep scanning for non-ASCII characters)
+            value = Math.min(value * 10 + (c - '0'), 1L << 32);
+        }
+
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return NOT_A_NUMBER;
+        }
+        return value;
+    }
+
+    /**
+     * Label -> address table without boxing: open addressing over the label
+     * strings, with the entries kept in definition order.
+     */
+    private static final class SymbolTable {
+        private String[] slotKeys = new String[128];
+        private int[] slotEntries = new int[128];     // entry index + 1 (0 = free slot)
+        private String[] names = new String[64];
+        private int[] addresses = new int[64];
+        private int size;
+
+        /** @return address of the label, or -1 if it is not defined */
+        int get(String label) {
+            int mask = slotKeys.length - 1;
+            for (int slot = label.hashCode() & mask; slotEntries[slot] != 0; slot = (slot + 1) & mask) {
+                if (slotKeys[slot].equals(label)) {
+                    return addresses[slotEntries[slot] - 1];
+                }
+            }
+            return -1;
+        }
+
+        /** Defines a label, or changes its address if it is already defined */
+        void put(String label, int address) {
+            int mask = slotKeys.length - 1;
+            int slot = label.hashCode() & mask;
+            for (; slotEntries[slot] != 0; slot = (slot + 1) & mask) {
+                if (slotKeys[slot].equals(label)) {
+                    addresses[slotEntries[slot] - 1] = address;
+                    return;
+                }
+            }
+
+            if (size == names.length) {
+                String[] grownNames = new String[size * 2];
+                int[] grownAddresses = new int[size * 2];
+                System.arraycopy(names, 0, grownNames, 0, size);
+                System.arraycopy(addresses, 0, grownAddresses, 0, size);
+                names = grownNames;
+                addresses = grownAddresses;
+            }
+            names[size] = label;
+            addresses[size] = address;
+            size++;
+            slotKeys[slot] = label;
+            slotEntries[slot] = size;
+
+            // Keep the table at most half full
+            if (size * 2 > slotKeys.length) {
+                rehash(slotKeys.length * 2);
+            }
+        }
+
+        private void rehash(int capacity) {
+            slotKeys = new String[capacity];
+            slotEntries = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = names[i].hashCode() & mask;
+                while (slotEntries[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slotKeys[slot] = names[i];
+                slotEntries[slot] = i + 1;
+            }
+        }
+
+        /** @return labels in definition order */
+        String[] names() {
+            String[] copy = new String[size];
+            System.arraycopy(names, 0, copy, 0, size);
+            return copy;
+        }
+
+        /** @return label addresses in definition order */
+        int[] addresses() {
+            int[] copy = new int[size];
+            System.arraycopy(addresses, 0, copy, 0, size);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The AssemblyCache class is the Assembler's persistent on-disk cache.
+ *
+ * Every successfully assembled source is stored in the cache directory under
+ * the SHA-256 of its text ("<key>.lc2a"): a header, the machine code words and
+ * the SourceScan of the source. Assembling an unchanged source again is a
+ * single memory-mapped read of the stored words.
+ *
+ * For every source file the cache also remembers the key it was last assembled
+ * under ("<hash of the path>.ref"), so when the file has been edited only the
+ * changed lines are scanned again (see AssemblerCore.assemble(lines, previous)).
+ *
+ * The directory is kept under a size bound by deleting the least recently used
+ * files (a hit touches the entry's modification time). The cache is only an
+ * optimization: any I/O problem with it is treated as a miss.
+ *
+ * Enabled with the system properties:
+ *  - assembler.cache           cache directory
+ *  - assembler.cache.maxBytes  size bound (default 64 MB)
+ */
+public final class AssemblyCache {
+    private static final int MAGIC = 0x4C433241;        // "LC2A"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;          // magic + version + word count
+    private static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final String ENTRY_SUFFIX = ".lc2a";
+    private static final String REF_SUFFIX = ".ref";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param directory Cache directory (created on first store)
+     * @param maxBytes  Total size the directory is trimmed to after a store
+     */
+    public AssemblyCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /** @return the cache configured by the system properties, or null when caching is off */
+    public static AssemblyCache fromSystemProperties() {
+        String directory = System.getProperty("assembler.cache");
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        long maxBytes = DEFAULT_MAX_BYTES;
+        String bound = System.getProperty("assembler.cache.maxBytes");
+        if (bound != null) {
+            try {
+                maxBytes = Long.parseLong(bound.trim());
+            } catch (NumberFormatException e) {
+                // Keep the default bound
+            }
+        }
+        return new AssemblyCache(Paths.get(directory), maxBytes);
+    }
+
+    /**
+     * Computes the cache key of a source.
+     *
+     * @param lines Source lines
+     * @return SHA-256 of the lines (each followed by '\n'), in hex
+     */
+    public static String key(List<String> lines) {
+        MessageDigest digest = sha256();
+        for (String line : lines) {
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Looks up the machine code of a source.
+     *
+     * @param key Cache key of the source
+     * @return the stored words, or null on a miss
+     */
+    public int[] lookup(String key) {
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(entry)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = readHeader(buffer);
+            if (count < 0) {
+                return null;
+            }
+            int[] words = new int[count];
+            buffer.asIntBuffer().get(words);
+            touch(entry);
+            return words;
+        } catch (IOException | RuntimeException e) {
+            // Missing, unreadable or truncated entry
+            return null;
+        }
+    }
+
+    /**
+     * Finds the scan of the version of a source file that was assembled last.
+     *
+     * @param source Source file
+     * @return its SourceScan, or null when the file was never cached
+     */
+    public SourceScan previousScan(Path source) {
+        try {
+            String key = Files.readString(refFile(source), StandardCharsets.US_ASCII).trim();
+            Path entry = directory.resolve(key + ENTRY_SUFFIX);
+            try (FileChannel channel = FileChannel.open(entry)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int count = readHeader(buffer);
+                if (count < 0) {
+                    return null;
+                }
+                buffer.position(HEADER_SIZE + count * 4);
+                return SourceScan.read(buffer);
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records that a source file was assembled to the entry with the given key.
+     *
+     * @param source Source file
+     * @param key    Cache key of its current text
+     */
+    public void remember(Path source, String key) {
+        try {
+            Files.createDirectories(directory);
+            writeAtomically(refFile(source), out -> out.write(key.getBytes(StandardCharsets.US_ASCII)));
+        } catch (IOException e) {
+            // The next edit is simply assembled in full
+        }
+    }
+
+    /**
+     * Stores a successful assembly and trims the cache to its size bound.
+     *
+     * @param source Source file the result was assembled from
+     * @param key    Cache key of the source
+     * @param result Assembly with a SourceScan (failed results are not stored)
+     */
+    public void store(Path source, String key, AssemblyResult result) {
+        if (!result.isSuccess() || result.getSourceScan() == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            writeAtomically(directory.resolve(key + ENTRY_SUFFIX), stream -> {
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(result.getWordCount());
+                for (int address = 0; address < result.getWordCount(); address++) {
+                    out.writeInt(result.getWord(address));
+                }
+                result.getSourceScan().write(out);
+                out.flush();
+            });
+            remember(source, key);
+            evict();
+        } catch (IOException e) {
+            // Not cached this time
+        }
+    }
+
+    /** Deletes the least recently used files until the directory fits its bound. */
+    private void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<FileTime> times = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(ENTRY_SUFFIX) && !name.endsWith(REF_SUFFIX)) {
+                    continue;
+                }
+                files.add(file);
+                times.add(Files.getLastModifiedTime(file));
+                total += Files.size(file);
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        // Oldest first
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> times.get(a).compareTo(times.get(b)));
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            Path file = files.get(order[i]);
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                total -= size;
+            }
+        }
+    }
+
+    /** @return word count from a valid entry header, or -1 */
+    private static int readHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return -1;
+        }
+        int count = buffer.getInt();
+        if (count < 0 || (long) HEADER_SIZE + count * 4L > buffer.limit()) {
+            return -1;
+        }
+        return count;
+    }
+
+    /** @return the file holding the last key of a source file */
+    private Path refFile(Path source) {
+        MessageDigest digest = sha256();
+        digest.update(source.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        return directory.resolve(hex(digest.digest()) + REF_SUFFIX);
+    }
+
+    /** Marks a file as recently used. */
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects eviction order
+        }
+    }
+
+    /** Writes the contents of a file. */
+    private interface Contents {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /** Writes a file through a temporary file, so readers never see half of it. */
+    private void writeAtomically(Path file, Contents contents) throws IOException {
+        Path temporary = Files.createTempFile(directory, "tmp", ".part");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16)) {
+                contents.writeTo(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * The AssemblyDiagnostic class describes one error found by AssemblerCore.
+ *
+ * The message is the same "[Error] ..." text the Assembler CLI prints.
+ */
+public final class AssemblyDiagnostic {
+
+    /** What kind of problem was found. */
+    public enum Kind {
+        /** Invalid or duplicate label definition (found before any encoding error is reported) */
+        LABEL,
+        /** A line that could not be encoded (bad instruction, register, offset, undefined label) */
+        ENCODING
+    }
+
+    private final Kind kind;
+    private final int line;       // 1-based source line
+    private final int address;    // address the line would have been assembled to
+    private final String message;
+
+    /**
+     * Constructor.
+     *
+     * @param kind    LABEL or ENCODING
+     * @param line    1-based source line number
+     * @param address Address of the line's word
+     * @param message Error message
+     */
+    public AssemblyDiagnostic(Kind kind, int line, int address, String message) {
+        this.kind = kind;
+        this.line = line;
+        this.address = address;
+        this.message = message;
+    }
+
+    /** @return LABEL or ENCODING */
+    public Kind getKind() { return kind; }
+
+    /** @return 1-based source line number */
+    public int getLine() { return line; }
+
+    /** @return address of the line's word */
+    public int getAddress() { return address; }
+
+    /** @return error message ("[Error] ...") */
+    public String getMessage() { return message; }
+
+    @Override
+    public String toString() {
+        return "line " + line + ": " + message;
+    }
+}
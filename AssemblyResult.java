@@ -0,0 +1,99 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The AssemblyResult class holds the output of one AssemblerCore.assemble call:
+ * the machine code words, the labels, and the diagnostics.
+ *
+ * When there are errors, words of erroneous lines are 0. getFirstError() is the
+ * error the Assembler CLI reports: the first label error if there is one,
+ * otherwise the encoding error with the lowest address.
+ */
+public final class AssemblyResult {
+    private final int[] words;
+    private final int wordCount;
+    private final String[] labels;
+    private final int[] labelAddresses;
+    private final List<AssemblyDiagnostic> diagnostics;
+    private final AssemblyDiagnostic firstError;
+    private final SourceScan sourceScan;   // only for incremental assembly
+
+    /**
+     * Constructor (used by AssemblerCore).
+     *
+     * @param words          Machine code buffer (only the first wordCount words are used)
+     * @param wordCount      Number of words
+     * @param labels         Labels in definition order
+     * @param labelAddresses Address of each label
+     * @param diagnostics    Label errors in source order, then encoding errors in address order
+     * @param sourceScan     Scan of every source line (null unless assembled incrementally)
+     */
+    AssemblyResult(int[] words, int wordCount, String[] labels, int[] labelAddresses,
+                   List<AssemblyDiagnostic> diagnostics, SourceScan sourceScan) {
+        this.words = words;
+        this.wordCount = wordCount;
+        this.labels = labels;
+        this.labelAddresses = labelAddresses;
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+        firstError = diagnostics.isEmpty() ? null : diagnostics.get(0);
+        this.sourceScan = sourceScan;
+    }
+
+    /** @return scan of every source line, for a later incremental assembly (null if not recorded) */
+    public SourceScan getSourceScan() { return sourceScan; }
+
+    /** @return true if the program has no errors */
+    public boolean isSuccess() { return firstError == null; }
+
+    /** @return all errors (label errors first, then encoding errors by address) */
+    public List<AssemblyDiagnostic> getDiagnostics() { return diagnostics; }
+
+    /** @return the error a sequential assembler reports first, or null */
+    public AssemblyDiagnostic getFirstError() { return firstError; }
+
+    /** @return number of machine code words (one per source line with code) */
+    public int getWordCount() { return wordCount; }
+
+    /** @return machine code word at an address */
+    public int getWord(int address) { return words[address]; }
+
+    /** @return a copy of the machine code */
+    public int[] getWords() {
+        int[] copy = new int[wordCount];
+        System.arraycopy(words, 0, copy, 0, wordCount);
+        return copy;
+    }
+
+    /**
+     * Copies the machine code into memory (e.g. Machine.getMemory()).
+     *
+     * @param memory Destination, starting at address 0
+     * @return number of words copied
+     */
+    public int copyTo(Memory memory) {
+        memory.load(words, wordCount);
+        return wordCount;
+    }
+
+    /**
+     * Number of words the Assembler CLI writes: everything if there is no error,
+     * the words before the first encoding error, or nothing on a label error.
+     *
+     * @return number of leading words that are valid output
+     */
+    public int getValidWordCount() {
+        if (firstError == null) {
+            return wordCount;
+        }
+        return firstError.getKind() == AssemblyDiagnostic.Kind.LABEL ? 0 : firstError.getAddress();
+    }
+
+    /** @return number of labels */
+    public int getLabelCount() { return labels.length; }
+
+    /** @return label by definition order */
+    public String getLabel(int index) { return labels[index]; }
+
+    /** @return address of the label by definition order */
+    public int getLabelAddress(int index) { return labelAddresses[index]; }
+}
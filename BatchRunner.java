@@ -0,0 +1,323 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * The BatchRunner class runs many machine code programs in one JVM.
+ *
+ * Input is either a directory (every *.obj file in it, sorted by name) or a
+ * manifest file listing one program per line (relative paths are resolved
+ * against the manifest's directory; blank lines and lines starting with '#'
+ * are skipped).
+ *
+ * Every program gets its own Machine on a work-stealing thread pool and its
+ * own output file <output_dir>/<name>.out, holding exactly what
+ * "java Simulator <file>" would print (states and error messages, in order).
+ * A summary (status, instructions executed, wall time per program) is printed
+ * when all programs have finished and saved as <output_dir>/summary.txt.
+ *
+ * Status:
+ *  - HALTED  the program executed a HALT instruction
+ *  - ERROR   the program could not be loaded or its output file written, or
+ *            it stopped on a runtime error (invalid memory access or opcode)
+ *  - LIMIT   the watchdog stopped it at the instruction limit (--max-instructions)
+ *  - TIMEOUT the watchdog stopped it at the time limit (--time-limit)
+ *  - LOOP    the watchdog caught it repeating a state forever (--detect-loops)
+ * LIMIT, TIMEOUT and LOOP count as errors in the totals.
+ */
+public class BatchRunner {
+
+    private static final String USAGE =
+            "Usage: java BatchRunner [--quiet | --final-only | --every N] [--engine interpreter|threaded|fused|jit|pipeline]"
+            + " [--fast-forward] [--max-instructions N] [--time-limit MS] [--detect-loops]"
+            + " [--threads N] <directory|manifest> <output_dir>";
+
+    /** Result of one program. */
+    private static final class Result {
+        final String name;
+        final String status;
+        final boolean error;
+        final long executed;
+        final long nanos;
+
+        Result(String name, String status, long executed, long nanos) {
+            this.name = name;
+            this.status = status;
+            this.error = !status.equals("HALTED");
+            this.executed = executed;
+            this.nanos = nanos;
+        }
+    }
+
+    /** Watchdog limits of every run (0 / false = off). */
+    private static final class Watchdog {
+        final long instructions;
+        final long millis;
+        final boolean loops;
+
+        Watchdog(long instructions, long millis, boolean loops) {
+            this.instructions = instructions;
+            this.millis = millis;
+            this.loops = loops;
+        }
+    }
+
+    /**
+     * Program entry point.
+     *
+     * Run modes are the same as Simulator's (default prints the state before
+     * every instruction); --threads N sets the pool size (default: one per CPU).
+     *
+     * @param args Command-line arguments (options, input, output directory)
+     */
+    public static void main(String[] args) {
+        int printInterval = 1;
+        boolean printFinal = true;
+        String engineName = "interpreter";
+        boolean fastForward = false;
+        long instructionLimit = 0;
+        long timeLimit = 0;
+        boolean detectLoops = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int argIndex = 0;
+
+        // Parse options
+        while (argIndex < args.length && args[argIndex].startsWith("--")) {
+            String option = args[argIndex++];
+            if (option.equals("--quiet")) {
+                printInterval = 0;
+                printFinal = false;
+            } else if (option.equals("--final-only")) {
+                printInterval = 0;
+            } else if (option.equals("--every") && argIndex < args.length) {
+                printInterval = Simulator.parsePositive(option, args[argIndex++]);
+            } else if (option.equals("--engine") && argIndex < args.length) {
+                engineName = args[argIndex++];
+                Simulator.createEngine(engineName);   // exits on an unknown name
+            } else if (option.equals("--fast-forward")) {
+                fastForward = true;
+            } else if (option.equals("--max-instructions") && argIndex < args.length) {
+                instructionLimit = Simulator.parsePositiveLong(option, args[argIndex++]);
+            } else if (option.equals("--time-limit") && argIndex < args.length) {
+                timeLimit = Simulator.parsePositiveLong(option, args[argIndex++]);
+            } else if (option.equals("--detect-loops")) {
+                detectLoops = true;
+            } else if (option.equals("--threads") && argIndex < args.length) {
+                threads = Simulator.parsePositive(option, args[argIndex++]);
+            } else {
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+        }
+
+        if (args.length - argIndex != 2) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        Path input = Paths.get(args[argIndex]);
+        Path outputDir = Paths.get(args[argIndex + 1]);
+        List<Path> programs = null;
+        try {
+            programs = Files.isDirectory(input) ? listDirectory(input) : readManifest(input);
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            System.err.println("Error reading input: " + e.getMessage());
+            System.exit(1);
+        }
+
+        // Give every program a unique output file name
+        List<String> names = new ArrayList<>();
+        Set<String> used = new HashSet<>();
+        for (Path program : programs) {
+            String base = program.getFileName().toString();
+            if (base.endsWith(".obj")) {
+                base = base.substring(0, base.length() - 4);
+            }
+            String name = base;
+            for (int n = 2; !used.add(name); n++) {
+                name = base + "-" + n;
+            }
+            names.add(name);
+        }
+
+        // Run every program on the pool
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (int i = 0; i < programs.size(); i++) {
+            Path program = programs.get(i);
+            Path output = outputDir.resolve(names.get(i) + ".out");
+            String name = names.get(i);
+            int interval = printInterval;
+            boolean finalState = printFinal;
+            String engine = engineName;
+            boolean fastForwardLoops = fastForward;
+            Watchdog watchdog = new Watchdog(instructionLimit, timeLimit, detectLoops);
+            futures.add(pool.submit(() -> runProgram(name, program, output, interval, finalState, engine,
+                    fastForwardLoops, watchdog)));
+        }
+
+        // Collect the results in input order
+        StringBuilder summary = new StringBuilder();
+        long totalExecuted = 0;
+        int errors = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Result result;
+            try {
+                result = futures.get(i).get();
+            } catch (ExecutionException e) {
+                // One program failing (e.g. its output file cannot be written) does not stop the others
+                // (the work-stealing pool may wrap the program's exception once more)
+                Throwable cause = e;
+                while (cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                String name = names.get(i);
+                System.err.println("Error running " + name + ": " + cause.getMessage());
+                result = new Result(name, "ERROR", 0, 0);
+            } catch (InterruptedException e) {
+                System.err.println("Error running batch: " + e.getMessage());
+                pool.shutdownNow();
+                System.exit(1);
+                return;
+            }
+            summary.append(String.format("%-7s %12d instructions %10.3f ms  %s%n",
+                    result.status, result.executed, result.nanos / 1e6, result.name));
+            totalExecuted += result.executed;
+            if (result.error) {
+                errors++;
+            }
+        }
+        pool.shutdown();
+        long wall = System.nanoTime() - start;
+        summary.append(String.format("%d programs, %d errors, %d instructions, %.3f ms wall time (%d threads)%n",
+                programs.size(), errors, totalExecuted, wall / 1e6, threads));
+
+        System.out.print(summary);
+        try {
+            Files.writeString(outputDir.resolve("summary.txt"), summary);
+        } catch (IOException e) {
+            System.err.println("Error writing summary: " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Loads and runs one program, writing its output to its own file.
+     *
+     * @param name          Program name (for the summary)
+     * @param program       Machine code file
+     * @param output        Output file
+     * @param printInterval Print interval (see Machine.setPrintInterval)
+     * @param printFinal    Print the final state
+     * @param engineName    Execution engine name (see Simulator)
+     * @param fastForward   Enable loop fast-forward
+     * @param watchdog      Limits of the run
+     * @return the result for the summary
+     */
+    private static Result runProgram(String name, Path program, Path output, int printInterval,
+                                     boolean printFinal, String engineName, boolean fastForward,
+                                     Watchdog watchdog) throws IOException {
+        long start = System.nanoTime();
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(output), 1 << 16)) {
+            // Both streams share one buffer, so the file keeps the states and errors in order
+            PrintStream out = new PrintStream(file, false);
+            PrintStream err = new PrintStream(file, false);
+
+            Machine machine = new Machine();
+            machine.setOutput(out, err);
+            if (!Files.exists(program)) {
+                err.println("Error: file '" + program + "' not found.");
+                err.flush();
+                return new Result(name, "ERROR", 0, System.nanoTime() - start);
+            }
+            try {
+                int count = ObjectLoader.load(program, machine.getMemory());
+                machine.setInstructionCount(count);
+            } catch (IOException e) {
+                err.println("Error reading file: " + e.getMessage());
+                err.flush();
+                return new Result(name, "ERROR", 0, System.nanoTime() - start);
+            } catch (IllegalArgumentException e) {
+                // Invalid machine code at line N
+                err.println(e.getMessage());
+                err.flush();
+                return new Result(name, "ERROR", 0, System.nanoTime() - start);
+            }
+
+            machine.setPrintInterval(printInterval);
+            machine.setPrintFinalState(printFinal);
+            machine.setEngine(Simulator.createEngine(engineName));
+            machine.setLoopFastForward(fastForward);
+            machine.setInstructionLimit(watchdog.instructions);
+            machine.setTimeLimit(watchdog.millis);
+            machine.setRepeatDetection(watchdog.loops);
+            machine.simulate();
+
+            out.flush();
+            err.flush();
+            String status;
+            switch (machine.getHaltReason()) {
+                case HALT:
+                    status = "HALTED";
+                    break;
+                case INSTRUCTION_LIMIT:
+                    status = "LIMIT";
+                    break;
+                case TIME_LIMIT:
+                    status = "TIMEOUT";
+                    break;
+                case INFINITE_LOOP:
+                    status = "LOOP";
+                    break;
+                default:
+                    // MEMORY_FAULT and INVALID_OPCODE
+                    status = "ERROR";
+                    break;
+            }
+            return new Result(name, status, machine.getExecuted(), System.nanoTime() - start);
+        }
+    }
+
+    /** @return every *.obj file in the directory, sorted by name */
+    private static List<Path> listDirectory(Path directory) throws IOException {
+        List<Path> programs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.obj")) {
+            for (Path program : stream) {
+                programs.add(program);
+            }
+        }
+        programs.sort(null);
+        return programs;
+    }
+
+    /** @return the programs listed in a manifest file */
+    private static List<Path> readManifest(Path manifest) throws IOException {
+        Path base = manifest.toAbsolutePath().getParent();
+        List<Path> programs = new ArrayList<>();
+        for (String line : Files.readAllLines(manifest)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            programs.add(base.resolve(line));
+        }
+        return programs;
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The BinaryTraceReader class reads traces written by BinaryTraceWriter.
+ * It can jump to the state before any step (nearest snapshot + replay of at
+ * most one group of records), print a range of states, or convert the whole
+ * trace back to the exact text Machine.simulate() prints.
+ *
+ * Steps are numbered within the trace (0 .. getSteps()). A trace of a run
+ * resumed from a checkpoint starts at getFirstStep() executed instructions;
+ * the printed states and the command-line --step / --range numbers use the
+ * machine's executed count, i.e. getFirstStep() + step.
+ */
+public class BinaryTraceReader implements Closeable {
+    private final FileChannel channel;
+    private final int count;              // instructionCount
+    private final int snapshotInterval;   // K
+    private final long steps;             // number of records
+    private final int finalPc;
+    private final long firstStep;         // executed count when the trace started
+    private final long snapshotSize;      // bytes per snapshot
+    private final long groupSize;         // bytes per snapshot + K records
+
+    // State of the last position reached (reused between calls)
+    private int pc;
+    private final int[] memory;
+    private final int[] registers = new int[BinaryTraceWriter.REGISTER_COUNT];
+    private long position = -1;           // step the state above belongs to
+
+    private final ByteBuffer records;
+
+    /**
+     * Program entry point.
+     *
+     * Commands:
+     *  --text        print every state, exactly like the simulator (default)
+     *  --step N      print the state before instruction N (N = final executed count gives the final state)
+     *  --range A B   print the states before instructions A..B
+     *  (N, A and B count executed instructions of the run, as printed by the simulator)
+     *  --info        print the header
+     *
+     * @param args Command-line arguments (trace file, then an optional command)
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            usage();
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        try (BinaryTraceReader reader = new BinaryTraceReader(Paths.get(args[0]))) {
+            String command = args.length > 1 ? args[1] : "--text";
+            if (command.equals("--text") && args.length == 2 || args.length == 1) {
+                reader.printText(out);
+            } else if (command.equals("--step") && args.length == 3) {
+                long step = reader.traceStep(Long.parseLong(args[2]));
+                reader.printRange(step, step, out);
+            } else if (command.equals("--range") && args.length == 4) {
+                reader.printRange(reader.traceStep(Long.parseLong(args[2])),
+                        reader.traceStep(Long.parseLong(args[3])), out);
+            } else if (command.equals("--info") && args.length == 2) {
+                out.println("instructions " + reader.count);
+                out.println("steps " + reader.steps);
+                out.println("first step " + reader.firstStep);
+                out.println("snapshot interval " + reader.snapshotInterval);
+                out.println("final pc " + reader.finalPc);
+            } else {
+                usage();
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("Error reading trace: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            out.flush();
+            System.err.println("Invalid trace request: " + e.getMessage());
+            System.exit(1);
+        }
+        out.flush();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java BinaryTraceReader <trace_file> [--text | --step N | --range A B | --info]");
+        System.exit(1);
+    }
+
+    /**
+     * Constructor: opens a trace and reads its header.
+     *
+     * @param file Trace file
+     * @throws IOException if the file cannot be read or is not a complete trace
+     */
+    public BinaryTraceReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = read(0, BinaryTraceWriter.HEADER_SIZE);
+        if (header.getInt() != BinaryTraceWriter.MAGIC || header.getInt() != BinaryTraceWriter.VERSION) {
+            channel.close();
+            throw new IOException("not a binary trace: " + file);
+        }
+        count = header.getInt();
+        snapshotInterval = header.getInt();
+        steps = header.getLong();
+        finalPc = header.getInt();
+        header.getInt();                  // reserved
+        firstStep = header.getLong();
+        if (steps < 0) {
+            channel.close();
+            throw new IOException("trace was not closed properly: " + file);
+        }
+
+        snapshotSize = (1L + count + BinaryTraceWriter.REGISTER_COUNT) * 4;
+        groupSize = snapshotSize + (long) snapshotInterval * BinaryTraceWriter.RECORD_SIZE;
+        memory = new int[count];
+        records = ByteBuffer.allocate(Math.min(snapshotInterval, 4096) * BinaryTraceWriter.RECORD_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** @return number of executed instructions in the trace */
+    public long getSteps() { return steps; }
+
+    /** @return executed count of the machine when the trace started (0 unless resumed) */
+    public long getFirstStep() { return firstStep; }
+
+    /**
+     * Converts an executed count of the traced run to a step of this trace.
+     *
+     * @param executed Executed instructions, as printed by the simulator
+     * @return step number within the trace
+     * @throws IllegalArgumentException if the trace does not cover it
+     */
+    public long traceStep(long executed) {
+        if (executed < firstStep || executed > firstStep + steps) {
+            throw new IllegalArgumentException("step " + executed + " is outside "
+                    + firstStep + ".." + (firstStep + steps));
+        }
+        return executed - firstStep;
+    }
+
+    /** @return number of instructions loaded from file in the traced run */
+    public int getInstructionCount() { return count; }
+
+    /**
+     * Moves to the state before instruction n (n == getSteps() is the final state).
+     * Costs one snapshot read plus at most snapshotInterval records.
+     *
+     * @param n Step number
+     * @throws IOException if the trace cannot be read
+     */
+    public void seek(long n) throws IOException {
+        if (n < 0 || n > steps) {
+            throw new IllegalArgumentException("step " + n + " is outside 0.." + steps);
+        }
+
+        // Continue from the current position when it is in the same group
+        long group = Math.min(n, steps - 1) / snapshotInterval;
+        if (position < group * snapshotInterval || position > n) {
+            loadSnapshot(group);
+        }
+        replayTo(n);
+    }
+
+    /** @return program counter of the current state */
+    public int getPc() { return pc; }
+
+    /** @return memory words printed by the simulator in the current state */
+    public int[] getMemory() { return memory; }
+
+    /** @return register file of the current state */
+    public int[] getRegisters() { return registers; }
+
+    /**
+     * Prints the states before instructions from..to in the simulator's format.
+     *
+     * @param from First step
+     * @param to   Last step (inclusive)
+     * @param out  Destination
+     * @throws IOException if the trace cannot be read
+     */
+    public void printRange(long from, long to, PrintWriter out) throws IOException {
+        if (from > to) {
+            throw new IllegalArgumentException("empty range " + from + ".." + to);
+        }
+        StringBuilder sb = new StringBuilder();
+        seek(from);
+        for (long n = from; n <= to; n++) {
+            seek(n);
+            sb.setLength(0);
+            Machine.appendState(sb, pc, memory, count, registers, n == steps, firstStep + n);
+            out.println(sb);
+        }
+    }
+
+    /**
+     * Prints the whole trace exactly as Machine.simulate() prints a run.
+     *
+     * @param out Destination
+     * @throws IOException if the trace cannot be read
+     */
+    public void printText(PrintWriter out) throws IOException {
+        printRange(0, steps, out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void loadSnapshot(long group) throws IOException {
+        ByteBuffer snapshot = read(group * groupSize + BinaryTraceWriter.HEADER_SIZE, (int) snapshotSize);
+        pc = snapshot.getInt();
+        for (int i = 0; i < count; i++) {
+            memory[i] = snapshot.getInt();
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = snapshot.getInt();
+        }
+        position = group * snapshotInterval;
+    }
+
+    private void replayTo(long n) throws IOException {
+        while (position < n) {
+            // Read a batch of records from the current group
+            long group = position / snapshotInterval;
+            int index = (int) (position % snapshotInterval);
+            int batch = (int) Math.min(Math.min(n - position, snapshotInterval - index),
+                    records.capacity() / BinaryTraceWriter.RECORD_SIZE);
+            long offset = BinaryTraceWriter.HEADER_SIZE + group * groupSize + snapshotSize
+                    + (long) index * BinaryTraceWriter.RECORD_SIZE;
+
+            records.clear().limit(batch * BinaryTraceWriter.RECORD_SIZE);
+            readFully(records, offset);
+            records.flip();
+
+            for (int i = 0; i < batch; i++) {
+                records.getInt();                 // pc of the executed instruction
+                records.getInt();                 // instruction word
+                int writeback = records.getInt();
+                int value = records.getInt();
+                int target = Writeback.index(writeback);
+                if (Writeback.kind(writeback) == Writeback.REGISTER) {
+                    registers[target] = value;
+                } else if (Writeback.kind(writeback) == Writeback.MEMORY && target < count) {
+                    memory[target] = value;
+                }
+            }
+            position += batch;
+        }
+
+        // The pc after a step is the pc of the next record (or the final pc)
+        pc = n == steps ? finalPc : recordPc(n);
+    }
+
+    private int recordPc(long n) throws IOException {
+        long offset = BinaryTraceWriter.HEADER_SIZE + (n / snapshotInterval) * groupSize + snapshotSize
+                + (n % snapshotInterval) * BinaryTraceWriter.RECORD_SIZE;
+        return read(offset, 4).getInt();
+    }
+
+    private ByteBuffer read(long offset, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, offset);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("trace is truncated");
+            }
+        }
+    }
+}
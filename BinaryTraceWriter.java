@@ -0,0 +1,244 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The BinaryTraceWriter class records a run in a compact binary trace.
+ *
+ * File layout (all values little-endian int32 unless noted):
+ *  - Header (40 bytes): magic "LC2T", version, instructionCount,
+ *    snapshotInterval K, steps (int64), final pc, reserved, first step (int64):
+ *    the executed count when tracing started (non-zero for a resumed run)
+ *  - Then groups of: one snapshot (pc, mem[0..count-1], reg[0..7]) holding the
+ *    state before step g*K, followed by up to K records
+ *  - Record (16 bytes): pc, instruction word, writeback (see Writeback), value written
+ *
+ * Snapshots and records are fixed-size, so BinaryTraceReader can seek to any
+ * step directly. The simulation thread only pushes 4 ints per step into a
+ * bounded ring buffer; a background thread builds the snapshots and writes
+ * everything through a FileChannel.
+ */
+public class BinaryTraceWriter implements StepListener, Closeable {
+    static final int MAGIC = 0x5432434C;    // "LC2T" read as little-endian
+    static final int VERSION = 2;           // 2: first step in the header
+    static final int HEADER_SIZE = 40;
+    static final int RECORD_SIZE = 16;
+    static final int REGISTER_COUNT = 8;
+
+    private static final int RING_CAPACITY = 1 << 16;   // records (must be a power of 2)
+    private static final int RING_MASK = RING_CAPACITY - 1;
+
+    private final FileChannel channel;
+    private final int snapshotInterval;
+
+    // --- Ring buffer shared by the simulation thread (producer) and writer thread (consumer) ---
+    private final int[] ring = new int[RING_CAPACITY * 4];
+    private final AtomicLong tail = new AtomicLong();   // next record the producer writes
+    private final AtomicLong head = new AtomicLong();   // next record the consumer reads
+    private volatile boolean finished;                  // producer is done
+    private Thread consumer;
+
+    // --- Writer thread state: a shadow copy of the traced state, for snapshots ---
+    private int count;
+    private int[] shadowMemory;
+    private final int[] shadowRegisters = new int[REGISTER_COUNT];
+    private long written;               // records written so far
+    private ByteBuffer buffer;
+    private volatile IOException error;
+
+    private int finalPc;
+    private long steps;
+    private long firstStep;             // executed count of the machine when tracing started
+
+    /**
+     * Constructor: creates (or truncates) the trace file.
+     *
+     * @param file             Trace file
+     * @param snapshotInterval Number of records between full snapshots
+     * @throws IOException if the file cannot be opened
+     */
+    public BinaryTraceWriter(Path file, int snapshotInterval) throws IOException {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("snapshot interval must be positive");
+        }
+        this.snapshotInterval = snapshotInterval;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void started(Machine machine) {
+        count = machine.getInstructionCount();
+        firstStep = machine.getExecuted();
+        shadowMemory = new int[count];
+        machine.getMemory().copyTo(0, shadowMemory, count);
+        System.arraycopy(machine.getRegisters(), 0, shadowRegisters, 0, REGISTER_COUNT);
+
+        buffer = ByteBuffer.allocateDirect(Math.max(1 << 16, (count + 16) * 4))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(-1, 0);
+        try {
+            channel.position(HEADER_SIZE);
+        } catch (IOException e) {
+            error = e;
+        }
+
+        consumer = new Thread(this::drain, "binary-trace-writer");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @Override
+    public void stepped(Machine machine, int pc, int instruction) {
+        int writeback = Writeback.of(instruction, machine.getRegisters(), machine.getMemory().size());
+        int value = 0;
+        if (Writeback.kind(writeback) == Writeback.REGISTER) {
+            value = machine.getRegisters()[Writeback.index(writeback)];
+        } else if (Writeback.kind(writeback) == Writeback.MEMORY) {
+            value = machine.getMemory().read(Writeback.index(writeback));
+        }
+
+        // Wait for room if the writer thread has fallen a full ring behind
+        long t = tail.get();
+        while (t - head.get() >= RING_CAPACITY) {
+            LockSupport.parkNanos(10_000);
+        }
+
+        int slot = (int) (t & RING_MASK) * 4;
+        ring[slot] = pc;
+        ring[slot + 1] = instruction;
+        ring[slot + 2] = writeback;
+        ring[slot + 3] = value;
+        tail.lazySet(t + 1);
+    }
+
+    @Override
+    public void halted(Machine machine) {
+        finalPc = machine.getPc();
+        steps = machine.getExecuted();
+    }
+
+    /**
+     * Waits for the writer thread, completes the header and closes the file.
+     *
+     * @throws IOException if any part of the trace could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while writing trace");
+            }
+            if (error == null) {
+                // Patch the step count and final pc into the header
+                writeHeader(written, finalPc);
+            }
+        }
+        channel.close();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /** Writer thread: moves records from the ring buffer to the file. */
+    private void drain() {
+        try {
+            while (true) {
+                long h = head.get();
+                long available = tail.get() - h;
+                if (available == 0) {
+                    if (finished && tail.get() == h) {
+                        break;
+                    }
+                    LockSupport.parkNanos(50_000);
+                    continue;
+                }
+
+                for (long i = 0; i < available; i++) {
+                    int slot = (int) ((h + i) & RING_MASK) * 4;
+                    writeRecord(ring[slot], ring[slot + 1], ring[slot + 2], ring[slot + 3]);
+                }
+                head.lazySet(h + available);
+            }
+            flush();
+        } catch (IOException e) {
+            error = e;
+            // Unblock the producer: drop everything from now on
+            while (!finished) {
+                head.lazySet(tail.get());
+                LockSupport.parkNanos(50_000);
+            }
+        }
+    }
+
+    private void writeRecord(int pc, int instruction, int writeback, int value) throws IOException {
+        // A snapshot of the state before this step starts every group
+        if (written % snapshotInterval == 0) {
+            ensureRoom((count + 1 + REGISTER_COUNT) * 4);
+            buffer.putInt(pc);
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(shadowMemory[i]);
+            }
+            for (int i = 0; i < REGISTER_COUNT; i++) {
+                buffer.putInt(shadowRegisters[i]);
+            }
+        }
+
+        ensureRoom(RECORD_SIZE);
+        buffer.putInt(pc).putInt(instruction).putInt(writeback).putInt(value);
+        written++;
+
+        // Keep the shadow state current for the next snapshot
+        int index = Writeback.index(writeback);
+        if (Writeback.kind(writeback) == Writeback.REGISTER) {
+            shadowRegisters[index] = value;
+        } else if (Writeback.kind(writeback) == Writeback.MEMORY && index < count) {
+            shadowMemory[index] = value;
+        }
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+        if (buffer.remaining() < bytes) {
+            // A single snapshot larger than the buffer
+            buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeHeader(long stepCount, int pc) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(snapshotInterval)
+              .putLong(stepCount).putInt(pc).putInt(0).putLong(firstStep);
+        header.flip();
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header, HEADER_SIZE - header.remaining());
+            }
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+    }
+}
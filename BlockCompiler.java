@@ -0,0 +1,507 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The BlockCompiler class translates one LC-2K basic block into JVM bytecode
+ * and loads it as a hidden class implementing JitEngine.Block.
+ *
+ * A basic block is a straight run of ADD/NAND/LW/SW/NOOP instructions that
+ * ends with BEQ, JALR or HALT (or at the length limit). The generated method
+ * keeps LC-2K registers 1–7 in JVM locals, so HotSpot can allocate them to
+ * machine registers; they are written back to the register array at every exit.
+ *
+ * The generated run(reg, mem, engine) returns a packed long:
+ *  - bits 31–0  : next PC
+ *  - bits 61–32 : number of instructions executed in the block
+ *  - bit 62     : set if the machine halted (HALT or invalid memory access)
+ *
+ * The class file is written by hand (version 49, so no stack map frames are
+ * needed), which keeps the JIT free of external dependencies.
+ */
+public class BlockCompiler {
+    static final int MAX_BLOCK_LENGTH = 64;    // instructions per block
+    static final long HALTED = 1L << 62;
+
+    // Locals of the generated run method
+    private static final int LOCAL_REG = 1;
+    private static final int LOCAL_MEM = 2;
+    private static final int LOCAL_ENGINE = 3;
+    private static final int LOCAL_R1 = 4;     // LC-2K r1..r7 live in locals 4..10
+    private static final int LOCAL_ADDRESS = 11;
+
+    private static final String BLOCK_INTERFACE = "JitEngine$Block";
+    private static final String ENGINE_CLASS = "JitEngine";
+    private static final String MEMORY_CLASS = "Memory";
+    private static final String RUN_DESCRIPTOR = "([ILMemory;LJitEngine;)J";
+
+    // --- JVM opcodes used by the compiler ---
+    private static final int ICONST_0 = 0x03, ICONST_M1 = 0x02, BIPUSH = 0x10, SIPUSH = 0x11;
+    private static final int LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14;
+    private static final int ILOAD = 0x15, ALOAD = 0x19, ISTORE = 0x36;
+    private static final int IALOAD = 0x2E, IASTORE = 0x4F;
+    private static final int IADD = 0x60, IAND = 0x7E, IXOR = 0x82, IUSHR = 0x7C;
+    private static final int I2L = 0x85, LAND = 0x7F, LOR = 0x81;
+    private static final int IFEQ = 0x99, IFNE = 0x9A, IF_ICMPNE = 0xA0, GOTO = 0xA7;
+    private static final int LRETURN = 0xAD, RETURN = 0xB1;
+    private static final int INVOKEVIRTUAL = 0xB6, INVOKESPECIAL = 0xB7;
+
+    private final MethodHandles.Lookup lookup;
+
+    /**
+     * Constructor.
+     *
+     * @param lookup Lookup in the package the hidden classes are defined in
+     */
+    public BlockCompiler(MethodHandles.Lookup lookup) {
+        this.lookup = lookup;
+    }
+
+    /**
+     * Returns the number of instructions in the block starting at start,
+     * or 0 if start is outside memory.
+     *
+     * @param mem   Memory holding the program
+     * @param start First address of the block
+     * @return block length (the terminator included)
+     */
+    public static int blockLength(Memory mem, int start) {
+        int length = 0;
+        for (int pc = start; pc < mem.size() && length < MAX_BLOCK_LENGTH; pc++) {
+            length++;
+            int opcode = (mem.read(pc) >>> 22) & 0b111;
+            if (opcode == Decoder.BEQ || opcode == Decoder.JALR || opcode == Decoder.HALT) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Compiles the block at addresses start .. start+length-1.
+     *
+     * @param mem    Memory holding the program
+     * @param start  First address of the block
+     * @param length Number of instructions (from blockLength)
+     * @return a new instance of the generated block class
+     * @throws ReflectiveOperationException if the generated class cannot be defined
+     */
+    public JitEngine.Block compile(Memory mem, int start, int length) throws ReflectiveOperationException {
+        byte[] classFile = new ClassWriter(mem, start, length).toByteArray();
+        MethodHandles.Lookup hidden = lookup.defineHiddenClass(classFile, true);
+        try {
+            return (JitEngine.Block) hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (ReflectiveOperationException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /** Writes the class file for one block. */
+    private static final class ClassWriter {
+        private final Memory mem;
+        private final int start;
+        private final int length;
+
+        // Constant pool
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> poolIndex = new HashMap<>();
+        private int poolCount = 1;
+
+        // Bytecode of run()
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private int maxStack = 8;
+        private final boolean[] written = new boolean[8];   // registers the block writes
+
+        ClassWriter(Memory mem, int start, int length) {
+            this.mem = mem;
+            this.start = start;
+            this.length = length;
+        }
+
+        byte[] toByteArray() {
+            try {
+                return build();
+            } catch (IOException e) {
+                // Only ByteArrayOutputStream is involved
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private byte[] build() throws IOException {
+            int thisClass = classRef("JitBlock" + start);
+            int superClass = classRef("java/lang/Object");
+            int blockInterface = classRef(BLOCK_INTERFACE);
+            int initName = utf8("<init>");
+            int initType = utf8("()V");
+            int objectInit = methodRef("java/lang/Object", "<init>", "()V");
+            int runName = utf8("run");
+            int runType = utf8(RUN_DESCRIPTOR);
+            int codeName = utf8("Code");
+
+            byte[] runCode = runMethod();
+            byte[] initCode = {(byte) ALOAD, 0, (byte) INVOKESPECIAL,
+                    (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN};
+
+            ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(classBytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);            // minor version
+            out.writeShort(49);           // major version (Java 5: no stack map frames)
+            out.writeShort(poolCount);
+            pool.flush();
+            out.write(poolBytes.toByteArray());
+            out.writeShort(0x0011);       // ACC_PUBLIC | ACC_FINAL
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);            // interfaces
+            out.writeShort(blockInterface);
+            out.writeShort(0);            // fields
+            out.writeShort(2);            // methods
+            writeMethod(out, 0x0001, initName, initType, codeName, 1, 1, initCode);
+            writeMethod(out, 0x0001, runName, runType, codeName, maxStack, LOCAL_ADDRESS + 1, runCode);
+            out.writeShort(0);            // class attributes
+            out.flush();
+            return classBytes.toByteArray();
+        }
+
+        private void writeMethod(DataOutputStream out, int flags, int name, int type, int codeName,
+                                 int stack, int locals, byte[] body) throws IOException {
+            out.writeShort(flags);
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1);            // attributes: Code
+            out.writeShort(codeName);
+            out.writeInt(12 + body.length);
+            out.writeShort(stack);
+            out.writeShort(locals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);            // exception table
+            out.writeShort(0);            // code attributes
+        }
+
+        // --- run() body ---
+
+        private byte[] runMethod() {
+            // Find the registers the block writes (they are stored back at every exit)
+            for (int i = 0; i < length; i++) {
+                int destination = destination(mem.read(start + i));
+                if (destination > 0) {
+                    written[destination] = true;
+                }
+            }
+
+            // Prologue: copy r1..r7 into locals
+            for (int r = 1; r < 8; r++) {
+                emit(ALOAD, LOCAL_REG);
+                pushInt(r);
+                emit(IALOAD);
+                emit(ISTORE, LOCAL_R1 + r - 1);
+            }
+
+            for (int i = 0; i < length; i++) {
+                int pc = start + i;
+                int instruction = mem.read(pc);
+                int opcode = (instruction >>> 22) & 0b111;
+                int regA = (instruction >>> 19) & 0b111;
+                int regB = (instruction >>> 16) & 0b111;
+                int offset = (short) (instruction & 0xFFFF);
+                int next = (pc + 1) % Machine.MEMORY_SIZE;
+                int count = i + 1;
+
+                switch (opcode) {
+                    case Decoder.ADD:
+                    case Decoder.NAND: {
+                        int destReg = instruction & 0b111;
+                        if (destReg == 0) {
+                            break;
+                        }
+                        loadRegister(regA);
+                        loadRegister(regB);
+                        if (opcode == Decoder.ADD) {
+                            emit(IADD);
+                        } else {
+                            emit(IAND);
+                            emit(ICONST_M1);
+                            emit(IXOR);
+                        }
+                        emit(ISTORE, LOCAL_R1 + destReg - 1);
+                        break;
+                    }
+
+                    case Decoder.LW:
+                        if (regB == 0) {
+                            break;   // the interpreter skips the whole load
+                        }
+                        computeAddress(regA, offset, count, next);
+                        emit(ALOAD, LOCAL_MEM);
+                        emit(ILOAD, LOCAL_ADDRESS);
+                        emitInvoke(INVOKEVIRTUAL, methodRef(MEMORY_CLASS, "read", "(I)I"));
+                        emit(ISTORE, LOCAL_R1 + regB - 1);
+                        break;
+
+                    case Decoder.SW: {
+                        computeAddress(regA, offset, count, next);
+                        // if (engine.store(mem, address, value)) exit: code was overwritten
+                        emit(ALOAD, LOCAL_ENGINE);
+                        emit(ALOAD, LOCAL_MEM);
+                        emit(ILOAD, LOCAL_ADDRESS);
+                        loadRegister(regB);
+                        emitInvoke(INVOKEVIRTUAL, methodRef(ENGINE_CLASS, "store", "(LMemory;II)Z"));
+                        int skip = branch(IFEQ);
+                        exit(count, next, false);
+                        patch(skip);
+                        break;
+                    }
+
+                    case Decoder.BEQ: {
+                        int target = pc + 1 + offset;
+                        if (regA == regB) {
+                            exit(count, target, false);
+                        } else {
+                            loadRegister(regA);
+                            loadRegister(regB);
+                            int notTaken = branch(IF_ICMPNE);
+                            exit(count, target, false);
+                            patch(notTaken);
+                            exit(count, next, false);
+                        }
+                        return code.toByteArray();
+                    }
+
+                    case Decoder.JALR:
+                        if (regB != 0) {
+                            pushInt(pc + 1);
+                            emit(ISTORE, LOCAL_R1 + regB - 1);
+                        }
+                        if (regA != regB) {
+                            // Next PC comes from a register
+                            writeBack();
+                            loadRegister(regA);
+                            emit(I2L);
+                            emitLong(LDC2_W, 0xFFFFFFFFL);
+                            emit(LAND);
+                            emitLong(LDC2_W, (long) count << 32);
+                            emit(LOR);
+                            emit(LRETURN);
+                        } else {
+                            exit(count, next, false);
+                        }
+                        return code.toByteArray();
+
+                    case Decoder.HALT:
+                        exit(count, next, true);
+                        return code.toByteArray();
+
+                    default:
+                        // NOOP
+                        break;
+                }
+            }
+
+            // Length limit reached: continue in the interpreter
+            exit(length, (start + length) % Machine.MEMORY_SIZE, false);
+            return code.toByteArray();
+        }
+
+        /** address = reg[regA] + offset, exiting with a fault if it is outside memory. */
+        private void computeAddress(int regA, int offset, int count, int next) {
+            loadRegister(regA);
+            pushInt(offset);
+            emit(IADD);
+            emit(ISTORE, LOCAL_ADDRESS);
+
+            // (address >>> 16) != 0 means address < 0 or address >= 65536
+            emit(ILOAD, LOCAL_ADDRESS);
+            emit(BIPUSH, 16);
+            emit(IUSHR);
+            int inRange = branch(IFEQ);
+            emit(ALOAD, LOCAL_ENGINE);
+            emit(ILOAD, LOCAL_ADDRESS);
+            emitInvoke(INVOKEVIRTUAL, methodRef(ENGINE_CLASS, "fault", "(I)V"));
+            exit(count, next, true);
+            patch(inRange);
+        }
+
+        /** Writes the registers back and returns the packed result. */
+        private void exit(int count, int nextPc, boolean halted) {
+            writeBack();
+            long result = ((long) count << 32) | (nextPc & 0xFFFFFFFFL) | (halted ? HALTED : 0);
+            emitLong(LDC2_W, result);
+            emit(LRETURN);
+        }
+
+        private void writeBack() {
+            for (int r = 1; r < 8; r++) {
+                if (written[r]) {
+                    emit(ALOAD, LOCAL_REG);
+                    pushInt(r);
+                    emit(ILOAD, LOCAL_R1 + r - 1);
+                    emit(IASTORE);
+                }
+            }
+        }
+
+        private void loadRegister(int r) {
+            if (r == 0) {
+                emit(ICONST_0);
+            } else {
+                emit(ILOAD, LOCAL_R1 + r - 1);
+            }
+        }
+
+        private static int destination(int instruction) {
+            switch ((instruction >>> 22) & 0b111) {
+                case Decoder.ADD:
+                case Decoder.NAND:
+                    return instruction & 0b111;
+                case Decoder.LW:
+                case Decoder.JALR:
+                    return (instruction >>> 16) & 0b111;
+                default:
+                    return 0;
+            }
+        }
+
+        // --- Bytecode helpers ---
+
+        private void emit(int opcode) {
+            code.write(opcode);
+        }
+
+        private void emit(int opcode, int operand) {
+            code.write(opcode);
+            code.write(operand);
+        }
+
+        private void emitInvoke(int opcode, int index) {
+            code.write(opcode);
+            code.write(index >> 8);
+            code.write(index);
+        }
+
+        private void emitLong(int opcode, long value) {
+            int index = longConstant(value);
+            code.write(opcode);
+            code.write(index >> 8);
+            code.write(index);
+        }
+
+        private void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                emit(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                emit(BIPUSH, value & 0xFF);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                code.write(SIPUSH);
+                code.write(value >> 8);
+                code.write(value);
+            } else {
+                int index = intConstant(value);
+                if (index < 256) {
+                    emit(LDC, index);
+                } else {
+                    code.write(LDC_W);
+                    code.write(index >> 8);
+                    code.write(index);
+                }
+            }
+        }
+
+        /** Emits a forward branch and returns its position for patch(). */
+        private int branch(int opcode) {
+            int at = code.size();
+            code.write(opcode);
+            code.write(0);
+            code.write(0);
+            return at;
+        }
+
+        /** Points the branch at position 'at' to the current end of the code. */
+        private void patch(int at) {
+            byte[] bytes = code.toByteArray();
+            int offset = bytes.length - at;
+            bytes[at + 1] = (byte) (offset >> 8);
+            bytes[at + 2] = (byte) offset;
+            code.reset();
+            code.write(bytes, 0, bytes.length);
+        }
+
+        // --- Constant pool helpers ---
+
+        private int utf8(String text) {
+            return constant("U" + text, () -> {
+                pool.writeByte(1);
+                pool.writeUTF(text);
+            }, 1);
+        }
+
+        private int classRef(String name) {
+            int nameIndex = utf8(name);
+            return constant("C" + name, () -> {
+                pool.writeByte(7);
+                pool.writeShort(nameIndex);
+            }, 1);
+        }
+
+        private int methodRef(String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(descriptor);
+            int nameAndType = constant("N" + name + descriptor, () -> {
+                pool.writeByte(12);
+                pool.writeShort(nameIndex);
+                pool.writeShort(typeIndex);
+            }, 1);
+            return constant("M" + owner + "." + name + descriptor, () -> {
+                pool.writeByte(10);
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType);
+            }, 1);
+        }
+
+        private int intConstant(int value) {
+            return constant("I" + value, () -> {
+                pool.writeByte(3);
+                pool.writeInt(value);
+            }, 1);
+        }
+
+        private int longConstant(long value) {
+            // Long constants take two pool slots
+            return constant("J" + value, () -> {
+                pool.writeByte(5);
+                pool.writeLong(value);
+            }, 2);
+        }
+
+        private int constant(String key, PoolEntry entry, int slots) {
+            Integer index = poolIndex.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                entry.write();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            int newIndex = poolCount;
+            poolCount += slots;
+            poolIndex.put(key, newIndex);
+            return newIndex;
+        }
+    }
+
+    /** Writes one constant pool entry. */
+    private interface PoolEntry {
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,377 @@
+import java.util.Locale;
+
+/**
+ * The CacheSimulator class models an L1 cache in front of LC-2K memory to
+ * estimate how a program would perform on a memory system. Only hits and
+ * misses are counted: the Machine still reads and writes Memory directly, so
+ * results are the same with or without a cache.
+ *
+ * The Machine calls fetch() for every instruction fetch and load()/store()
+ * for every LW and SW (see Machine.setCache). L1 is either split (separate
+ * instruction and data caches of the configured size each) or unified (one
+ * cache for both streams).
+ *
+ * Each cache is set-associative, with configurable:
+ *  - size and block size in words
+ *  - associativity (ways)
+ *  - replacement policy: LRU, FIFO or random
+ *  - write policy: write-back with write-allocate, or write-through with
+ *    no-write-allocate (a store that misses goes straight to memory)
+ *
+ * Lines are kept in flat arrays indexed by set * ways + way, so one access
+ * costs a few shifts and a scan of one set.
+ *
+ * Average memory access time is hit time + miss rate * miss penalty, in cycles.
+ */
+public final class CacheSimulator {
+
+    /** How a victim is chosen when a set is full. */
+    public enum Replacement { LRU, FIFO, RANDOM }
+
+    /** What a store does. */
+    public enum WritePolicy { WRITE_BACK, WRITE_THROUGH }
+
+    public static final String DEFAULT_SPEC = "split,size=256,block=4,ways=2,policy=lru,write=back,hit=1,miss=100";
+
+    private final Cache instructions;
+    private final Cache data;           // same object as instructions when unified
+    private final int hitTime;          // cycles
+    private final int missPenalty;      // cycles to fetch a block from memory
+
+    /**
+     * Constructor.
+     *
+     * @param unified     One cache for instructions and data (false = split L1)
+     * @param sizeWords   Capacity of each cache in words
+     * @param blockWords  Block (line) size in words
+     * @param ways        Associativity (1 = direct mapped)
+     * @param replacement Replacement policy
+     * @param write       Write policy
+     * @param hitTime     Cycles for a hit
+     * @param missPenalty Additional cycles for a miss
+     * @throws IllegalArgumentException when the geometry is not valid
+     */
+    public CacheSimulator(boolean unified, int sizeWords, int blockWords, int ways,
+                          Replacement replacement, WritePolicy write, int hitTime, int missPenalty) {
+        if (hitTime < 0 || missPenalty < 0) {
+            throw new IllegalArgumentException("Error: cache timings must not be negative.");
+        }
+        instructions = new Cache(unified ? "L1" : "L1I", sizeWords, blockWords, ways, replacement, write);
+        data = unified ? instructions : new Cache("L1D", sizeWords, blockWords, ways, replacement, write);
+        this.hitTime = hitTime;
+        this.missPenalty = missPenalty;
+    }
+
+    /**
+     * Builds a cache model from a comma-separated specification, e.g.
+     * "unified,size=512,block=8,ways=4,policy=fifo,write=through,hit=1,miss=50".
+     * Omitted settings take their values from DEFAULT_SPEC.
+     *
+     * @param spec Specification
+     * @return the cache model
+     * @throws IllegalArgumentException for an unknown or invalid setting
+     */
+    public static CacheSimulator parse(String spec) {
+        boolean unified = false;
+        int size = 256;
+        int block = 4;
+        int ways = 2;
+        Replacement replacement = Replacement.LRU;
+        WritePolicy write = WritePolicy.WRITE_BACK;
+        int hit = 1;
+        int miss = 100;
+
+        for (String setting : spec.split(",")) {
+            String item = setting.trim().toLowerCase(Locale.ROOT);
+            int equals = item.indexOf('=');
+            String key = equals < 0 ? item : item.substring(0, equals);
+            String value = equals < 0 ? "" : item.substring(equals + 1);
+            switch (key) {
+                case "split":
+                    unified = false;
+                    break;
+                case "unified":
+                    unified = true;
+                    break;
+                case "size":
+                    size = number(key, value);
+                    break;
+                case "block":
+                    block = number(key, value);
+                    break;
+                case "ways":
+                    ways = number(key, value);
+                    break;
+                case "hit":
+                    hit = number(key, value);
+                    break;
+                case "miss":
+                    miss = number(key, value);
+                    break;
+                case "policy":
+                    try {
+                        replacement = Replacement.valueOf(value.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Error: unknown replacement policy '" + value + "'.");
+                    }
+                    break;
+                case "write":
+                    if (value.equals("back")) {
+                        write = WritePolicy.WRITE_BACK;
+                    } else if (value.equals("through")) {
+                        write = WritePolicy.WRITE_THROUGH;
+                    } else {
+                        throw new IllegalArgumentException("Error: unknown write policy '" + value + "'.");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Error: unknown cache setting '" + setting.trim() + "'.");
+            }
+        }
+        return new CacheSimulator(unified, size, block, ways, replacement, write, hit, miss);
+    }
+
+    private static int number(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Error: cache setting '" + key + "' needs a number.");
+        }
+    }
+
+    /**
+     * Records an instruction fetch.
+     *
+     * @param address Address of the instruction (in range)
+     */
+    public void fetch(int address) {
+        instructions.access(address, false);
+    }
+
+    /**
+     * Records the read of a LW.
+     *
+     * @param address Address read (in range)
+     */
+    public void load(int address) {
+        data.access(address, false);
+    }
+
+    /**
+     * Records the write of a SW.
+     *
+     * @param address Address written (in range)
+     */
+    public void store(int address) {
+        data.access(address, true);
+    }
+
+    /** @return the instruction cache (the unified cache if not split) */
+    public Cache getInstructionCache() { return instructions; }
+
+    /** @return the data cache (the unified cache if not split) */
+    public Cache getDataCache() { return data; }
+
+    /** @return true if instructions and data share one cache */
+    public boolean isUnified() { return instructions == data; }
+
+    /**
+     * @param cache One of this model's caches
+     * @return its average memory access time in cycles
+     */
+    public double getAmat(Cache cache) {
+        return hitTime + cache.getMissRate() * missPenalty;
+    }
+
+    /** @return average memory access time over all accesses, in cycles */
+    public double getAmat() {
+        long accesses = instructions.getAccesses() + (isUnified() ? 0 : data.getAccesses());
+        long misses = instructions.getMisses() + (isUnified() ? 0 : data.getMisses());
+        return hitTime + (accesses == 0 ? 0 : (double) misses / accesses) * missPenalty;
+    }
+
+    /**
+     * Builds the statistics report.
+     *
+     * @return multi-line report
+     */
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        appendReport(sb, instructions);
+        if (!isUnified()) {
+            appendReport(sb, data);
+        }
+        sb.append(String.format("AMAT: %.3f cycles (hit %d, miss penalty %d)%n", getAmat(), hitTime, missPenalty));
+        return sb.toString();
+    }
+
+    private void appendReport(StringBuilder sb, Cache cache) {
+        sb.append(String.format("%s: %d words, %d-word blocks, %d-way, %s, %s%n",
+                cache.name, cache.sets * cache.ways * cache.blockWords, cache.blockWords, cache.ways,
+                cache.replacement, cache.write == WritePolicy.WRITE_BACK ? "write-back" : "write-through"));
+        sb.append(String.format("\taccesses: %d (%d reads, %d writes)%n",
+                cache.getAccesses(), cache.reads, cache.writes));
+        sb.append(String.format("\thits: %d, misses: %d (%d read, %d write), miss rate %.2f%%%n",
+                cache.getAccesses() - cache.getMisses(), cache.getMisses(), cache.readMisses, cache.writeMisses,
+                cache.getMissRate() * 100));
+        sb.append(String.format("\tevictions: %d, dirty write-backs: %d, write-through stores: %d%n",
+                cache.evictions, cache.writeBacks, cache.writeThroughs));
+        sb.append(String.format("\tAMAT: %.3f cycles%n", getAmat(cache)));
+    }
+
+    /** One set-associative cache. */
+    public static final class Cache {
+        private final String name;
+        private final int blockWords;
+        private final int ways;
+        private final int sets;
+        private final int blockShift;
+        private final int setMask;
+        private final int setShift;
+        private final Replacement replacement;
+        private final WritePolicy write;
+
+        // Per line (set * ways + way)
+        private final int[] tags;
+        private final boolean[] valid;
+        private final boolean[] dirty;
+        private final long[] stamps;    // LRU: time of last use; FIFO: time of fill
+
+        private long clock;             // access counter for the stamps
+        private int random = 0x2545F491;  // xorshift state (fixed seed: runs are repeatable)
+
+        // Statistics
+        private long reads;
+        private long writes;
+        private long readMisses;
+        private long writeMisses;
+        private long evictions;
+        private long writeBacks;
+        private long writeThroughs;
+
+        Cache(String name, int sizeWords, int blockWords, int ways, Replacement replacement, WritePolicy write) {
+            if (!isPowerOfTwo(sizeWords) || !isPowerOfTwo(blockWords) || !isPowerOfTwo(ways)) {
+                throw new IllegalArgumentException("Error: cache size, block size and ways must be powers of two.");
+            }
+            if (blockWords * ways > sizeWords || sizeWords > Machine.MEMORY_SIZE) {
+                throw new IllegalArgumentException("Error: a " + sizeWords + "-word cache cannot hold "
+                        + ways + " ways of " + blockWords + "-word blocks.");
+            }
+            this.name = name;
+            this.blockWords = blockWords;
+            this.ways = ways;
+            this.sets = sizeWords / (blockWords * ways);
+            this.blockShift = Integer.numberOfTrailingZeros(blockWords);
+            this.setMask = sets - 1;
+            this.setShift = Integer.numberOfTrailingZeros(sets);
+            this.replacement = replacement;
+            this.write = write;
+            int lines = sets * ways;
+            tags = new int[lines];
+            valid = new boolean[lines];
+            dirty = new boolean[lines];
+            stamps = new long[lines];
+        }
+
+        private static boolean isPowerOfTwo(int n) {
+            return n > 0 && (n & (n - 1)) == 0;
+        }
+
+        /** Looks up one word, filling or updating a line as the policies say. */
+        void access(int address, boolean isWrite) {
+            clock++;
+            if (isWrite) {
+                writes++;
+            } else {
+                reads++;
+            }
+            int block = address >>> blockShift;
+            int tag = block >>> setShift;
+            int base = (block & setMask) * ways;
+
+            // Hit?
+            for (int line = base; line < base + ways; line++) {
+                if (valid[line] && tags[line] == tag) {
+                    if (replacement == Replacement.LRU) {
+                        stamps[line] = clock;
+                    }
+                    if (isWrite) {
+                        if (write == WritePolicy.WRITE_BACK) {
+                            dirty[line] = true;
+                        } else {
+                            writeThroughs++;
+                        }
+                    }
+                    return;
+                }
+            }
+
+            // Miss
+            if (isWrite) {
+                writeMisses++;
+                if (write == WritePolicy.WRITE_THROUGH) {
+                    // No-write-allocate: the word goes to memory, the cache is unchanged
+                    writeThroughs++;
+                    return;
+                }
+            } else {
+                readMisses++;
+            }
+            int line = victim(base);
+            if (valid[line]) {
+                evictions++;
+                if (dirty[line]) {
+                    writeBacks++;
+                }
+            }
+            valid[line] = true;
+            tags[line] = tag;
+            dirty[line] = isWrite;
+            stamps[line] = clock;
+        }
+
+        /** @return the line to fill in the set starting at base: an empty one, else per policy */
+        private int victim(int base) {
+            for (int line = base; line < base + ways; line++) {
+                if (!valid[line]) {
+                    return line;
+                }
+            }
+            if (replacement == Replacement.RANDOM) {
+                random ^= random << 13;
+                random ^= random >>> 17;
+                random ^= random << 5;
+                return base + (random & (ways - 1));
+            }
+            // LRU and FIFO: the oldest stamp (last use or fill time)
+            int oldest = base;
+            for (int line = base + 1; line < base + ways; line++) {
+                if (stamps[line] < stamps[oldest]) {
+                    oldest = line;
+                }
+            }
+            return oldest;
+        }
+
+        /** @return name in the report (L1, L1I or L1D) */
+        public String getName() { return name; }
+
+        /** @return number of reads and writes */
+        public long getAccesses() { return reads + writes; }
+
+        /** @return number of misses */
+        public long getMisses() { return readMisses + writeMisses; }
+
+        /** @return misses / accesses (0 before the first access) */
+        public double getMissRate() {
+            long accesses = getAccesses();
+            return accesses == 0 ? 0 : (double) getMisses() / accesses;
+        }
+
+        /** @return number of valid lines replaced */
+        public long getEvictions() { return evictions; }
+
+        /** @return number of dirty lines written back to memory */
+        public long getWriteBacks() { return writeBacks; }
+    }
+}
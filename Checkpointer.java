@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The Checkpointer class writes periodic checkpoints of a running Machine
+ * (set with Machine.setCheckpointer).
+ *
+ * Every interval instructions the Machine takes a copy-on-write snapshot
+ * (Machine.checkpoint, which forks memory instead of copying it) and hands
+ * it over; compressing and writing the file happens
+ * on a background thread, so the simulation only pauses for the snapshot.
+ * While a checkpoint is being written, newer snapshots replace each other:
+ * only the latest one is written next.
+ */
+public class Checkpointer {
+    private final Path file;
+    private final long interval;
+    private final ExecutorService writer;
+    private final AtomicReference<MachineCheckpoint> latest = new AtomicReference<>();
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private volatile IOException error;   // first write error
+
+    private long nextCheckpoint;          // only used by the simulation thread
+
+    /**
+     * Constructor.
+     *
+     * @param file     Checkpoint file (replaced by every checkpoint)
+     * @param interval Instructions between checkpoints
+     */
+    public Checkpointer(Path file, long interval) {
+        this.file = file;
+        this.interval = interval;
+        writer = Executors.newSingleThreadExecutor(command -> {
+            Thread thread = new Thread(command, "lc2k-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets where the checkpoints start counting (called when simulate() starts).
+     *
+     * @param executed Current executed count of the machine
+     */
+    void start(long executed) {
+        nextCheckpoint = executed + interval;
+    }
+
+    /** @return executed count at which the next checkpoint is due */
+    long nextCheckpoint() { return nextCheckpoint; }
+
+    /**
+     * Queues a snapshot for writing (called by the simulation thread).
+     *
+     * @param checkpoint Snapshot of the machine
+     */
+    void submit(MachineCheckpoint checkpoint) {
+        nextCheckpoint = checkpoint.getExecuted() + interval;
+        latest.set(checkpoint);
+        if (writing.compareAndSet(false, true)) {
+            writer.execute(this::drain);
+        }
+    }
+
+    /** Writes snapshots until none is waiting (runs on the writer thread). */
+    private void drain() {
+        do {
+            MachineCheckpoint checkpoint;
+            while ((checkpoint = latest.getAndSet(null)) != null) {
+                try {
+                    checkpoint.write(file);
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+            writing.set(false);
+            // A snapshot submitted just before the flag was cleared is written here
+        } while (latest.get() != null && writing.compareAndSet(false, true));
+    }
+
+    /**
+     * Waits until every queued checkpoint is on disk and stops the writer thread.
+     *
+     * @throws IOException when a checkpoint could not be written
+     */
+    public void finish() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while writing checkpoint", e);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Why Machine.debugRun() returned.
+ */
+public enum DebugStop {
+    /** The requested number of instructions was executed */
+    STEP_LIMIT,
+    /** The next instruction has a breakpoint (it has not executed yet) */
+    BREAKPOINT,
+    /** The last instruction stored to a watched memory word */
+    WATCHPOINT,
+    /** The last instruction changed a watched register */
+    REGISTER_CHANGE,
+    /** The machine has halted (see Machine.getHaltReason()) */
+    HALTED
+}
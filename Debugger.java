@@ -0,0 +1,359 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Debugger class is a line-oriented debugger for LC-2K programs.
+ *
+ * It loads a machine code file and reads commands from standard input, one
+ * per line, running the Machine with debugRun() in between:
+ *
+ *  break <addr>            stop before executing the instruction at <addr>
+ *  delete <addr>           remove a breakpoint
+ *  watch <addr>[-<addr>]   stop after a SW to a word in the range
+ *  watch r<N>              stop after register N changes
+ *  unwatch <addr>[-<addr>] | r<N>
+ *  continue                run until a breakpoint, watchpoint or HALT
+ *  step [n]                execute n instructions (default 1)
+ *  back [n]                undo the last n instructions (default 1)
+ *  print                   print the machine state as the Simulator does
+ *  print r<N> | <addr>[-<addr>]
+ *  info                    list breakpoints and watches
+ *  quit
+ *
+ * Addresses are numbers or labels from a symbol file (written by the
+ * Assembler's optional third argument). Commands may be abbreviated to
+ * their first letter where that is unambiguous (b, c, s, p, q).
+ */
+public class Debugger {
+
+    private static final String USAGE = "Usage: java Debugger [--symbols <file>] <machine_code_file>";
+    private static final String PROMPT = "(lc2k) ";
+
+    private final Machine machine;
+    private final PrintStream out;
+    private final Map<String, Integer> labels = new HashMap<>();
+    private final Map<Integer, String> names = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param machine Machine with a program loaded (no ExecutionEngine)
+     * @param out     Where command output goes
+     */
+    public Debugger(Machine machine, PrintStream out) {
+        this.machine = machine;
+        this.out = out;
+    }
+
+    /**
+     * Program entry point: loads the program and runs the command loop.
+     *
+     * @param args Command-line arguments ([--symbols file] machine code file)
+     */
+    public static void main(String[] args) {
+        String symbolFile = null;
+        int argIndex = 0;
+        if (args.length > 1 && args[0].equals("--symbols")) {
+            symbolFile = args[1];
+            argIndex = 2;
+        }
+        if (args.length - argIndex != 1) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        String filename = args[argIndex];
+        File inputFile = new File(filename);
+        if (!inputFile.exists()) {
+            System.err.println("Error: file '" + filename + "' not found.");
+            System.exit(1);
+        }
+
+        Machine machine = new Machine();
+        Debugger debugger = new Debugger(machine, System.out);
+        try {
+            machine.setInstructionCount(ObjectLoader.load(inputFile.toPath(), machine.getMemory()));
+            if (symbolFile != null) {
+                debugger.readSymbols(symbolFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        // Keep history so that "back" works
+        machine.setUndoLog(new UndoLog());
+
+        try {
+            debugger.run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            System.err.println("Error reading commands: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads a symbol file: one "label address" pair per line.
+     *
+     * @param file Symbol file
+     * @throws IOException when the file cannot be read
+     * @throws IllegalArgumentException when a line is not a label and an address
+     */
+    public void readSymbols(String file) throws IOException {
+        for (Map.Entry<String, Integer> symbol : Assembler.readSymbols(Paths.get(file)).entrySet()) {
+            labels.put(symbol.getKey(), symbol.getValue());
+            names.putIfAbsent(symbol.getValue(), symbol.getKey());
+        }
+    }
+
+    /**
+     * Runs the command loop until "quit" or the end of input.
+     *
+     * @param in Commands, one per line
+     * @throws IOException when reading fails
+     */
+    public void run(BufferedReader in) throws IOException {
+        out.print(PROMPT);
+        out.flush();
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] words = line.trim().split("\\s+");
+            if (!words[0].isEmpty()) {
+                try {
+                    if (!execute(words)) {
+                        return;
+                    }
+                } catch (IllegalArgumentException e) {
+                    out.println(e.getMessage());
+                }
+            }
+            out.print(PROMPT);
+            out.flush();
+        }
+        out.println();
+    }
+
+    /**
+     * Executes one command.
+     *
+     * @param words The command and its arguments
+     * @return false for "quit"
+     * @throws IllegalArgumentException for an unknown command or a bad argument
+     */
+    private boolean execute(String[] words) {
+        String argument = words.length > 1 ? words[1] : null;
+        switch (words[0]) {
+            case "break":
+            case "b":
+                int address = address(required(argument));
+                machine.setBreakpoint(address, true);
+                out.println("Breakpoint at " + describe(address));
+                break;
+
+            case "delete":
+                machine.setBreakpoint(address(required(argument)), false);
+                break;
+
+            case "watch":
+            case "unwatch":
+                watch(required(argument), words[0].equals("watch"));
+                break;
+
+            case "continue":
+            case "c":
+                report(machine.debugRun(Long.MAX_VALUE));
+                break;
+
+            case "step":
+            case "s":
+                report(machine.debugRun(argument == null ? 1 : count(argument)));
+                break;
+
+            case "back":
+                long undone = machine.stepBack(argument == null ? 1 : count(argument));
+                out.println("Went back " + undone + " instructions to pc " + describe(machine.getPc()));
+                break;
+
+            case "print":
+            case "p":
+                print(argument);
+                break;
+
+            case "info":
+                info();
+                break;
+
+            case "quit":
+            case "q":
+                return false;
+
+            default:
+                throw new IllegalArgumentException("Unknown command '" + words[0] + "'.");
+        }
+        return true;
+    }
+
+    /** Prints why debugRun stopped and where the machine is now. */
+    private void report(DebugStop stop) {
+        int pc = machine.getPc();
+        switch (stop) {
+            case BREAKPOINT:
+                out.println("Breakpoint, pc " + describe(pc));
+                break;
+
+            case WATCHPOINT: {
+                int address = machine.getWatchIndex();
+                out.println("Watchpoint: mem[" + address + "] " + machine.getWatchOldValue() + " -> "
+                        + machine.getMemory().read(address) + ", pc now " + describe(pc));
+                break;
+            }
+
+            case REGISTER_CHANGE: {
+                int register = machine.getWatchIndex();
+                out.println("Watch: reg[" + register + "] " + machine.getWatchOldValue() + " -> "
+                        + machine.getRegisters()[register] + ", pc now " + describe(pc));
+                break;
+            }
+
+            case HALTED:
+                out.println("Machine halted (" + machine.getHaltReason() + ") after "
+                        + machine.getExecuted() + " instructions, pc " + describe(pc));
+                break;
+
+            default:
+                out.println("pc " + describe(pc) + " after " + machine.getExecuted() + " instructions");
+                break;
+        }
+    }
+
+    private void watch(String argument, boolean enabled) {
+        if (argument.length() > 1 && argument.charAt(0) == 'r' && !labels.containsKey(argument)) {
+            int register = register(argument);
+            if (register == 0) {
+                throw new IllegalArgumentException("Error: r0 is always zero and cannot be watched.");
+            }
+            machine.setRegisterWatch(register, enabled);
+            return;
+        }
+        int[] range = range(argument);
+        machine.setWatchpoint(range[0], range[1], enabled);
+    }
+
+    private void print(String argument) {
+        if (argument == null) {
+            // Same dump as Machine.printState(), but on the debugger's stream
+            int count = machine.getInstructionCount();
+            int[] words = new int[count];
+            machine.getMemory().copyTo(0, words, count);
+            StringBuilder sb = new StringBuilder();
+            Machine.appendState(sb, machine.getPc(), words, count, machine.getRegisters(),
+                    machine.isHalted(), machine.getExecuted());
+            out.println(sb);
+        } else if (argument.length() > 1 && argument.charAt(0) == 'r' && !labels.containsKey(argument)) {
+            int register = register(argument);
+            out.println("reg[" + register + "] " + machine.getRegisters()[register]);
+        } else {
+            int[] range = range(argument);
+            for (int address = range[0]; address <= range[1]; address++) {
+                out.println("mem[" + address + "] " + machine.getMemory().read(address));
+            }
+        }
+    }
+
+    private void info() {
+        for (int address = 0; address < Machine.MEMORY_SIZE; address++) {
+            if (machine.hasBreakpoint(address)) {
+                out.println("break " + describe(address));
+            }
+        }
+        int first = -1;
+        for (int address = 0; address <= Machine.MEMORY_SIZE; address++) {
+            boolean watched = address < Machine.MEMORY_SIZE && machine.isWatchpoint(address);
+            if (watched && first < 0) {
+                first = address;
+            } else if (!watched && first >= 0) {
+                out.println("watch " + describe(first) + (address - 1 > first ? "-" + (address - 1) : ""));
+                first = -1;
+            }
+        }
+        for (int register = 1; register < 8; register++) {
+            if (machine.isRegisterWatched(register)) {
+                out.println("watch r" + register);
+            }
+        }
+    }
+
+    /** @return "address" or "address (label)" */
+    private String describe(int address) {
+        String name = names.get(address);
+        return name == null ? Integer.toString(address) : address + " (" + name + ")";
+    }
+
+    private static String required(String argument) {
+        if (argument == null) {
+            throw new IllegalArgumentException("Error: missing address.");
+        }
+        return argument;
+    }
+
+    /** Parses "r0" .. "r7". */
+    private static int register(String text) {
+        if (text.length() == 2 && text.charAt(1) >= '0' && text.charAt(1) <= '7') {
+            return text.charAt(1) - '0';
+        }
+        throw new IllegalArgumentException("Error: unknown register '" + text + "'.");
+    }
+
+    /** Parses a label or an address in [0, MEMORY_SIZE). */
+    private int address(String text) {
+        Integer address = labels.get(text);
+        if (address == null) {
+            try {
+                address = Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Error: unknown label or address '" + text + "'.");
+            }
+        }
+        if (address < 0 || address >= Machine.MEMORY_SIZE) {
+            throw new IllegalArgumentException("Error: address " + address + " is outside memory.");
+        }
+        return address;
+    }
+
+    /** Parses "addr" or "addr-addr" into {first, last}. */
+    private int[] range(String text) {
+        int dash = text.indexOf('-', 1);
+        if (dash < 0) {
+            int address = address(text);
+            return new int[] {address, address};
+        }
+        int first = address(text.substring(0, dash));
+        int last = address(text.substring(dash + 1));
+        if (last < first) {
+            throw new IllegalArgumentException("Error: empty range '" + text + "'.");
+        }
+        return new int[] {first, last};
+    }
+
+    private static long count(String text) {
+        try {
+            long value = Long.parseLong(text);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Error: expected a positive number, got '" + text + "'.");
+    }
+}
@@ -21,20 +21,20 @@ public class Decoder {
     /**
      * Decodes and executes one instruction from the machine.
      * Steps:
-     *  1. Fetch current instruction
-     *  2. Extract opcode and operands using bit operations
+     *  1. Fetch current instruction (already predecoded by the Machine)
+     *  2. Read opcode and operands from the packed entry
      *  3. Dispatch execution to the appropriate class
      * 
      * @param machine The current CPU state (contains PC, registers, memory)
      */
      public void decode(Machine machine) {
         // --- FETCH current instruction ---
-        int instruction = machine.getInstruction();
+        // The fields were extracted (and the offset sign-extended) once when the word
+        // was first fetched; see PredecodeCache for the packed layout.
+        long entry = machine.getDecodedInstruction();
 
-         // --- Extract opcode ---
-        // Move bits 24–22 to the rightmost position (shift right 22 bits)
-        // Then mask with 0b111 to keep only 3 bits
-        int opcode = (instruction >>> 22) & 0b111;
+        // --- Extract opcode ---
+        int opcode = PredecodeCache.opcode(entry);
 
         switch (opcode) {
 
@@ -42,9 +42,9 @@ public class Decoder {
             case ADD:
             case NAND: {
                 // R-type: opcode, rs (21-19), rt (18-16), rd (2-0)
-                int rs = (instruction >>> 19) & 0b111;
-                int rt = (instruction >>> 16) & 0b111;
-                int rd = instruction & 0b111;
+                int rs = PredecodeCache.regA(entry);
+                int rt = PredecodeCache.regB(entry);
+                int rd = PredecodeCache.immediate(entry);
                 Rtype.getInstance().execute(machine, opcode, rs, rt, rd);
                 break;
             }
@@ -54,11 +54,11 @@ public class Decoder {
             case SW:
             case BEQ: {
 
-                // I-type: opcode, rs (21-19), rt (18-16), offset (15-0)
-                int rs = (instruction >>> 19) & 0b111;
-                int rt = (instruction >>> 16) & 0b111;
-                int offset = instruction & 0xFFFF;
-                Itype.getInstance().execute(machine, opcode, rs, rt, offset);
+                // I-type: opcode, rs (21-19), rt (18-16), offset (15-0, already sign-extended)
+                int rs = PredecodeCache.regA(entry);
+                int rt = PredecodeCache.regB(entry);
+                int offsetField = PredecodeCache.immediate(entry);
+                Itype.getInstance().executeExtended(machine, opcode, rs, rt, offsetField);
                 break;
             }
             
@@ -66,8 +66,8 @@ public class Decoder {
             case JALR: {
                 
                 // J-type: opcode, rs (21-19), rd (18-16)
-                int rs = (instruction >>> 19) & 0b111;
-                int rd = (instruction >>> 16) & 0b111;
+                int rs = PredecodeCache.regA(entry);
+                int rd = PredecodeCache.regB(entry);
                 Jtype.getInstance().execute(machine, opcode, rs, rd);
                 break;
             }
@@ -83,8 +83,8 @@ public class Decoder {
 
             // --- Invalid opcode ---
             default:
-                System.err.println("Unknown opcode: " + opcode);
-                machine.halt();
+                machine.getErr().println("Unknown opcode: " + opcode);
+                machine.halt(HaltReason.INVALID_OPCODE);
                 break;
         }
     }
@@ -0,0 +1,149 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * The DeltaTraceExpander class rebuilds the full simulator output
+ * (one "@@@ state:" block before every instruction, then the final state)
+ * from a trace written by DeltaTraceWriter.
+ */
+public class DeltaTraceExpander {
+
+    /**
+     * Program entry point.
+     *
+     * @param args Command-line arguments (expects the delta trace file)
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java DeltaTraceExpander <delta_trace_file>");
+            System.exit(1);
+        }
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        try (BufferedReader reader = new BufferedReader(new FileReader(args[0]))) {
+            expand(reader, out);
+        } catch (IOException e) {
+            out.flush();
+            System.err.println("Error reading trace: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            out.flush();
+            System.err.println("Invalid delta trace: " + e.getMessage());
+            System.exit(1);
+        }
+        out.flush();
+    }
+
+    /**
+     * Expands a delta trace into the exact text Machine.simulate() prints.
+     *
+     * @param reader Delta trace
+     * @param out    Destination of the expanded states
+     * @throws IOException if the trace cannot be read
+     * @throws IllegalArgumentException if the trace is malformed
+     */
+    public static void expand(BufferedReader reader, PrintWriter out) throws IOException {
+        // --- Header: the full initial state ---
+        expect(reader.readLine(), "delta-trace");
+        int count = parse(field(reader.readLine(), "instructions"));
+        int pc = parse(field(reader.readLine(), "pc"));
+        int[] memory = values(field(reader.readLine(), "mem"), count);
+        int[] registers = values(field(reader.readLine(), "reg"), 8);
+
+        StringBuilder sb = new StringBuilder();
+        long executed = 0;
+
+        // The state before the first instruction
+        String line = reader.readLine();
+        while (true) {
+            if (line == null) {
+                throw new IllegalArgumentException("trace ends before halt");
+            }
+
+            // --- Final state ---
+            if (line.startsWith("halt ")) {
+                sb.setLength(0);
+                Machine.appendState(sb, pc, memory, count, registers, true, parseCount(line.substring(5)));
+                out.println(sb);
+                return;
+            }
+
+            // State before the next instruction
+            sb.setLength(0);
+            Machine.appendState(sb, pc, memory, count, registers, false, executed);
+            out.println(sb);
+
+            // --- Apply one step: "<pc> [r|m <index> <value>]" ---
+            String[] parts = line.split(" ");
+            pc = parse(parts[0]);
+            if (parts.length == 4) {
+                int index = parse(parts[2]);
+                int value = parse(parts[3]);
+                if (parts[1].equals("r") && index < registers.length) {
+                    registers[index] = value;
+                } else if (parts[1].equals("m")) {
+                    // Words past the loaded program are never printed
+                    if (index < count) {
+                        memory[index] = value;
+                    }
+                } else {
+                    throw new IllegalArgumentException("bad step: " + line);
+                }
+            } else if (parts.length != 1) {
+                throw new IllegalArgumentException("bad step: " + line);
+            }
+            executed++;
+
+            line = reader.readLine();
+        }
+    }
+
+    private static void expect(String line, String expected) {
+        if (!expected.equals(line)) {
+            throw new IllegalArgumentException("expected '" + expected + "'");
+        }
+    }
+
+    private static String field(String line, String name) {
+        if (line == null || !(line.equals(name) || line.startsWith(name + " "))) {
+            throw new IllegalArgumentException("expected '" + name + "' line");
+        }
+        return line.substring(name.length()).trim();
+    }
+
+    private static int[] values(String text, int count) {
+        int[] values = new int[count];
+        if (count == 0) {
+            return values;
+        }
+        String[] parts = text.split(" ");
+        if (parts.length != count) {
+            throw new IllegalArgumentException("expected " + count + " values");
+        }
+        for (int i = 0; i < count; i++) {
+            values[i] = parse(parts[i]);
+        }
+        return values;
+    }
+
+    private static int parse(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad number: " + text);
+        }
+    }
+
+    /** Parses an instruction count, which can exceed the int range on long runs. */
+    private static long parseCount(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad number: " + text);
+        }
+    }
+}
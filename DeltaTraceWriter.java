@@ -0,0 +1,115 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The DeltaTraceWriter class records a run as a delta-encoded text trace.
+ * Instead of re-printing every memory word on every step (as printState does),
+ * it writes the full state once and then, per instruction, only what changed:
+ * the new PC and the one register or memory word that was written.
+ *
+ * Format:
+ *   delta-trace
+ *   instructions <count>
+ *   pc <pc>
+ *   mem <mem[0]> <mem[1]> ... <mem[count-1]>
+ *   reg <reg[0]> ... <reg[7]>
+ *   <pc> [r <reg> <value> | m <address> <value>]     (one line per instruction)
+ *   halt <executed>
+ *
+ * DeltaTraceExpander turns the trace back into the exact simulate() output.
+ */
+public class DeltaTraceWriter implements StepListener, Closeable {
+    private final Writer out;
+    private IOException error;   // first write error, reported by close()
+
+    /**
+     * Constructor: writes the trace to the given writer.
+     *
+     * @param out Destination of the trace (buffered by this class)
+     */
+    public DeltaTraceWriter(Writer out) {
+        this.out = new BufferedWriter(out, 1 << 16);
+    }
+
+    @Override
+    public void started(Machine machine) {
+        Memory memory = machine.getMemory();
+        int[] registers = machine.getRegisters();
+        int count = machine.getInstructionCount();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("delta-trace\n")
+          .append("instructions ").append(count).append('\n')
+          .append("pc ").append(machine.getPc()).append('\n')
+          .append("mem");
+        for (int i = 0; i < count; i++) {
+            sb.append(' ').append(memory.read(i));
+        }
+        sb.append("\nreg");
+        for (int value : registers) {
+            sb.append(' ').append(value);
+        }
+        sb.append('\n');
+        write(sb.toString());
+    }
+
+    @Override
+    public void stepped(Machine machine, int pc, int instruction) {
+        Memory memory = machine.getMemory();
+        int[] registers = machine.getRegisters();
+        int writeback = Writeback.of(instruction, registers, memory.size());
+        int index = Writeback.index(writeback);
+
+        switch (Writeback.kind(writeback)) {
+            case Writeback.REGISTER:
+                write(machine.getPc() + " r " + index + " " + registers[index] + "\n");
+                break;
+
+            case Writeback.MEMORY:
+                write(machine.getPc() + " m " + index + " " + memory.read(index) + "\n");
+                break;
+
+            default:
+                write(machine.getPc() + "\n");
+                break;
+        }
+    }
+
+    @Override
+    public void halted(Machine machine) {
+        write("halt " + machine.getExecuted() + "\n");
+    }
+
+    /**
+     * Flushes and closes the trace.
+     *
+     * @throws IOException if any part of the trace could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void write(String text) {
+        // Keep the first error and stop writing; the simulation itself goes on
+        if (error != null) {
+            return;
+        }
+        try {
+            out.write(text);
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * The ExecutionEngine interface is implemented by alternative ways of running
+ * the loaded program. By default the Machine interprets every instruction
+ * through the Decoder; an engine selected with Machine.setEngine() takes over
+ * execution and must leave the machine in exactly the same state.
+ */
+public interface ExecutionEngine {
+
+    /**
+     * Executes instructions starting at machine.getPc() until the machine halts
+     * or maxSteps instructions have run. The engine updates the machine's PC,
+     * executed count and halted flag before returning.
+     *
+     * @param machine  The machine to run
+     * @param maxSteps Maximum number of instructions to execute (at least 1)
+     */
+    void run(Machine machine, long maxSteps);
+
+    /**
+     * Called after memory[address] was overwritten (SW), so that anything the
+     * engine derived from that word can be rebuilt.
+     *
+     * @param address Address that was written
+     */
+    void invalidate(int address);
+}
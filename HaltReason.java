@@ -0,0 +1,19 @@
+/**
+ * Why a Machine stopped (see Machine.getHaltReason()).
+ */
+public enum HaltReason {
+    /** The machine has not halted */
+    NONE,
+    /** A HALT instruction was executed */
+    HALT,
+    /** LW/SW used an address outside memory */
+    MEMORY_FAULT,
+    /** An instruction class was given an opcode it does not implement */
+    INVALID_OPCODE,
+    /** The watchdog's instruction limit was reached */
+    INSTRUCTION_LIMIT,
+    /** The watchdog's wall-clock limit was reached */
+    TIME_LIMIT,
+    /** The watchdog found the machine repeating a state exactly (it can never halt) */
+    INFINITE_LOOP
+}
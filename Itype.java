@@ -1,21 +1,18 @@
 public class Itype {
     // Singleton instance: ensures that only one Itype object exists.
-    private static Itype instance;
+    // Built when the class is loaded, so concurrent machines never race to create it.
+    private static final Itype INSTANCE = new Itype();
 
     private Itype() {
     }
 
     /**
      * Provides access to the single Itype instance.
-     * Creates the instance only once if it doesn’t exist yet.
      *
      * @return The shared Itype instance.
      */
     public static Itype getInstance() {
-        if (instance == null) {
-            instance = new Itype();
-        }
-        return instance;
+        return INSTANCE;
     }
 
     /**
@@ -47,37 +44,67 @@ public class Itype {
      * @param offset  16-bit offset field
      */
     public void execute(Machine machine, int opcode, int rs, int rt, int offset) {
+        // Convert 16-bit offset to 32-bit, then execute
+        executeExtended(machine, opcode, rs, rt, signExtend(offset));
+    }
+
+    /**
+     * Execute I-type instruction (LW, SW, BEQ) whose offset is already sign-extended
+     * (used by the Decoder, which reads offsets from the PredecodeCache).
+     *
+     * @param machine     CPU state
+     * @param opcode      Operation code (2=LW, 3=SW, 4=BEQ)
+     * @param rs          Source register A
+     * @param rt          Target register B
+     * @param offsetField Sign-extended 32-bit offset
+     */
+    public void executeExtended(Machine machine, int opcode, int rs, int rt, int offsetField) {
         // Get references to the CPU's registers and memory
         int[] reg = machine.getRegisters();
-        int[] mem = machine.getMemory();
+        Memory mem = machine.getMemory();
 
-        // Convert 16-bit offset to 32-bit and calculate memory address
-        int offsetField = signExtend(offset);
+        // Calculate memory address
         int memAddress = offsetField + reg[rs];
 
         switch (opcode) {
             case 2: // LW: Load from memory into register rt
                 if (rt != 0) { // register 0 must remain 0
                     // Check for valid memory address range
-                    if (memAddress < 0 || memAddress >= mem.length) {
-                        System.err.println("Invalid memory access at " + memAddress);
-                        machine.halt();
+                    if (memAddress < 0 || memAddress >= mem.size()) {
+                        machine.getErr().println("Invalid memory access at " + memAddress);
+                        machine.halt(HaltReason.MEMORY_FAULT);
                         return;
                     }
+                    // Optional cache model sees the data access
+                    CacheSimulator cache = machine.getCache();
+                    if (cache != null) {
+                        cache.load(memAddress);
+                    }
                     // Perform load: rt = memory[rs + offset]
-                    reg[rt] = mem[memAddress];
+                    reg[rt] = mem.read(memAddress);
                 }
                 break;
 
             case 3: // SW: Store from register rt into memory
                 // Check for valid memory address range
-                if (memAddress < 0 || memAddress >= mem.length) {
-                    System.err.println("Invalid memory access at " + memAddress);
-                    machine.halt();
+                if (memAddress < 0 || memAddress >= mem.size()) {
+                    machine.getErr().println("Invalid memory access at " + memAddress);
+                    machine.halt(HaltReason.MEMORY_FAULT);
                     return;
                 }
+                // A watched word reports its old value to the debugger (see Machine.debugRun)
+                long[] watched = machine.getWatchpoints();
+                if (watched != null && (watched[memAddress >>> 6] & (1L << memAddress)) != 0) {
+                    machine.watchpointHit(memAddress, mem.read(memAddress));
+                }
+                CacheSimulator cache = machine.getCache();
+                if (cache != null) {
+                    cache.store(memAddress);
+                }
                 // Perform store: memory[rs + offset] = rt
-                mem[memAddress] = reg[rt];
+                mem.write(memAddress, reg[rt]);
+                // The word may be code: drop its predecoded copy (self-modifying code)
+                machine.invalidate(memAddress);
                 break;
 
             case 4: // BEQ: Branch if reg[rs] == reg[rt]
@@ -90,8 +117,8 @@ public class Itype {
 
             default:
                 // Invalid or unknown opcode — print an error and halt the CPU
-                System.err.println("Unknown I-type opcode: " + opcode);
-                machine.halt();
+                machine.getErr().println("Unknown I-type opcode: " + opcode);
+                machine.halt(HaltReason.INVALID_OPCODE);
                 break;
         }
     }
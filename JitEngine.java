@@ -0,0 +1,259 @@
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The JitEngine class is a tiering execution engine.
+ *
+ * It starts by interpreting, counting how often each PC is reached. When a PC
+ * becomes hot, the basic block starting there (a straight run ending at
+ * BEQ/JALR/HALT) is compiled to JVM bytecode by the BlockCompiler and loaded
+ * as a hidden class. From then on the whole block runs as one call, with the
+ * LC-2K registers held in JVM locals.
+ *
+ * Branches out of a block return to this engine's loop (side exits), which
+ * continues with another compiled block or the interpreter. When SW writes
+ * into the address range of a compiled block, the block is discarded
+ * (deoptimized) and that code is interpreted again until it warms back up.
+ */
+public class JitEngine implements ExecutionEngine {
+    private static final int MEMORY_SIZE = Machine.MEMORY_SIZE;
+    private static final int DEFAULT_THRESHOLD = 1000;
+
+    /** A compiled basic block (implemented by the generated hidden classes). */
+    public interface Block {
+        /**
+         * Runs the block.
+         *
+         * @param reg    Register file
+         * @param mem    Memory
+         * @param engine Engine (for stores and faults)
+         * @return packed result (see BlockCompiler)
+         */
+        long run(int[] reg, Memory mem, JitEngine engine);
+    }
+
+    /** Book-keeping for one compiled block. */
+    private static final class CompiledBlock {
+        final int start;
+        final int length;
+        final Block code;
+
+        CompiledBlock(int start, int length, Block code) {
+            this.start = start;
+            this.length = length;
+            this.code = code;
+        }
+    }
+
+    private final int threshold;          // executions before a block is compiled
+    private final BlockCompiler compiler = new BlockCompiler(MethodHandles.lookup());
+
+    private Machine machine;              // machine the compiled blocks belong to
+    private CompiledBlock[] blocks;       // compiled block starting at each address
+    private int[] heat;                   // interpreted executions per address
+    private short[] coverage;             // number of compiled blocks covering each address
+    private final List<CompiledBlock> live = new ArrayList<>();
+    private boolean stopped;              // set by the interpreter when the machine halts
+    private boolean faulted;              // set when the stop was an invalid memory access
+    private boolean compileFailed;        // stop trying after the first failure
+
+    /** Constructor: compiles blocks after the default number of executions */
+    public JitEngine() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threshold Number of interpreted executions before a block is compiled
+     */
+    public JitEngine(int threshold) {
+        this.threshold = Math.max(1, threshold);
+    }
+
+    @Override
+    public void run(Machine target, long maxSteps) {
+        if (machine != target) {
+            machine = target;
+            blocks = new CompiledBlock[MEMORY_SIZE];
+            heat = new int[MEMORY_SIZE];
+            coverage = new short[MEMORY_SIZE];
+            live.clear();
+        }
+
+        int[] reg = target.getRegisters();
+        Memory mem = target.getMemory();
+        int pc = target.getPc();
+        long count = 0;
+        stopped = false;
+        faulted = false;
+
+        while (count < maxSteps) {
+            if (pc >= 0 && pc < MEMORY_SIZE) {
+                // --- Compiled code ---
+                CompiledBlock block = blocks[pc];
+                if (block != null && block.length <= maxSteps - count) {
+                    long result = block.code.run(reg, mem, this);
+                    pc = (int) result;
+                    count += (result >>> 32) & 0x3FFFFFFF;
+                    if ((result & BlockCompiler.HALTED) != 0) {
+                        stopped = true;
+                        break;
+                    }
+                    continue;
+                }
+
+                // --- Interpreter (warming up) ---
+                if (block == null && ++heat[pc] == threshold) {
+                    compileBlock(mem, pc);
+                }
+                pc = interpret(reg, mem, pc);
+            } else {
+                // Outside memory the Machine fetches a NOOP
+                pc = (pc + 1) % MEMORY_SIZE;
+            }
+            count++;
+
+            if (stopped) {
+                break;
+            }
+        }
+
+        // Register 0 must always stay zero (hardware constraint)
+        reg[0] = 0;
+
+        target.setPc(pc);
+        target.addExecuted(count);
+        if (stopped) {
+            target.halt(faulted ? HaltReason.MEMORY_FAULT : HaltReason.HALT);
+        }
+    }
+
+    @Override
+    public void invalidate(int address) {
+        if (coverage == null || coverage[address] == 0) {
+            return;
+        }
+
+        // Deoptimize every block whose range contains the address
+        for (int i = live.size() - 1; i >= 0; i--) {
+            CompiledBlock block = live.get(i);
+            if (address >= block.start && address < block.start + block.length) {
+                live.remove(i);
+                blocks[block.start] = null;
+                heat[block.start] = 0;
+                for (int a = block.start; a < block.start + block.length; a++) {
+                    coverage[a]--;
+                }
+            }
+        }
+    }
+
+    /**
+     * SW from compiled code: stores the word and reports whether it overwrote
+     * compiled code (the running block must then exit, since it may be stale).
+     * The address has already been checked.
+     *
+     * @param mem     Memory
+     * @param address Address to write
+     * @param value   Value to write
+     * @return true if a compiled block was invalidated
+     */
+    public boolean store(Memory mem, int address, int value) {
+        mem.write(address, value);
+        boolean hitCode = coverage[address] != 0;
+        machine.invalidate(address);
+        return hitCode;
+    }
+
+    /**
+     * Invalid LW/SW address from compiled code: reports it like Itype does.
+     *
+     * @param address The invalid address
+     */
+    public void fault(int address) {
+        machine.getErr().println("Invalid memory access at " + address);
+        faulted = true;
+    }
+
+    /** @return number of blocks currently compiled */
+    public int getCompiledBlockCount() { return live.size(); }
+
+    private void compileBlock(Memory mem, int start) {
+        if (compileFailed) {
+            return;
+        }
+        int length = BlockCompiler.blockLength(mem, start);
+        try {
+            CompiledBlock block = new CompiledBlock(start, length, compiler.compile(mem, start, length));
+            blocks[start] = block;
+            live.add(block);
+            for (int a = start; a < start + length; a++) {
+                coverage[a]++;
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Keep interpreting; the results are the same, only slower
+            machine.getErr().println("JIT disabled: " + e);
+            compileFailed = true;
+        }
+    }
+
+    /**
+     * Interprets one instruction (same rules as Decoder and the type classes).
+     *
+     * @return next PC
+     */
+    private int interpret(int[] reg, Memory mem, int pc) {
+        int instruction = mem.read(pc);
+        int opcode = (instruction >>> 22) & 0b111;
+        int regA = (instruction >>> 19) & 0b111;
+        int regB = (instruction >>> 16) & 0b111;
+        int next = (pc + 1) % MEMORY_SIZE;
+
+        switch (opcode) {
+            case Decoder.ADD:
+            case Decoder.NAND: {
+                int destReg = instruction & 0b111;
+                if (destReg != 0) {
+                    reg[destReg] = opcode == Decoder.ADD ? reg[regA] + reg[regB] : ~(reg[regA] & reg[regB]);
+                }
+                return next;
+            }
+
+            case Decoder.LW:
+            case Decoder.SW: {
+                if (opcode == Decoder.LW && regB == 0) {
+                    return next;
+                }
+                int address = reg[regA] + (short) (instruction & 0xFFFF);
+                if (address < 0 || address >= MEMORY_SIZE) {
+                    fault(address);
+                    stopped = true;
+                } else if (opcode == Decoder.LW) {
+                    reg[regB] = mem.read(address);
+                } else {
+                    mem.write(address, reg[regB]);
+                    machine.invalidate(address);
+                }
+                return next;
+            }
+
+            case Decoder.BEQ:
+                return reg[regA] == reg[regB] ? pc + 1 + (short) (instruction & 0xFFFF) : next;
+
+            case Decoder.JALR:
+                if (regB != 0) {
+                    reg[regB] = pc + 1;
+                }
+                return regA != regB ? reg[regA] : next;
+
+            case Decoder.HALT:
+                stopped = true;
+                return next;
+
+            default:
+                return next;
+        }
+    }
+}
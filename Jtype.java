@@ -1,22 +1,19 @@
 public class Jtype {
     // Singleton instance: only one instance of Jtype is ever created.
     // This ensures all J-type instructions use the same shared object.
-    private static Jtype instance;
+    // Eagerly initialized; it holds no state, so all threads can share it.
+    private static final Jtype INSTANCE = new Jtype();
 
     private Jtype() {
     }
 
     /**
      * Provides access to the single Jtype instance.
-     * If it does not exist yet, create a new one.
      *
      * @return The shared Jtype instance.
      */
     public static Jtype getInstance() {
-        if (instance == null) {
-            instance = new Jtype();
-        }
-        return instance;
+        return INSTANCE;
     }
 
     /**
@@ -49,8 +46,8 @@ public class Jtype {
             }
         } else {
             // Unknown or invalid opcode: print error message and halt the CPU.
-            System.err.println("Unknown J-type opcode: " + opcode);
-            machine.halt();
+            machine.getErr().println("Unknown J-type opcode: " + opcode);
+            machine.halt(HaltReason.INVALID_OPCODE);
         }
     }
 }
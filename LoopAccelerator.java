@@ -0,0 +1,210 @@
+/**
+ * The LoopAccelerator class fast-forwards simple counted loops.
+ *
+ * It looks for innermost loops: a region [head, tail] closed by a BEQ at tail
+ * that branches back to head, whose body only contains ADD, NAND, NOOP,
+ * LW from a constant address (lw 0 k label) and forward BEQs. Such a loop
+ * cannot write memory or jump indirectly, so once the Machine reaches its
+ * head the whole loop can run in a tight local interpreter over predecoded
+ * arrays: no PC/executed bookkeeping, fetch or dispatch through the Decoder
+ * per step. Control returns to the Machine with the register file, PC and
+ * executed count it would have had after stepping through the loop.
+ *
+ * Analysis results are cached per head address and dropped when SW writes
+ * into a region.
+ */
+public class LoopAccelerator {
+    private static final int MAX_LOOP_LENGTH = 64;           // instructions per loop region
+    private static final Region NOT_A_LOOP = new Region(0, new int[0]);
+
+    /** One analysed loop: predecoded instructions of [head, head + length - 1]. */
+    private static final class Region {
+        final int head;
+        final int length;
+        final int[] opcode;
+        final int[] regA;
+        final int[] regB;
+        final int[] operand;      // destReg, load address or branch target index
+
+        Region(int head, int[] instructions) {
+            this.head = head;
+            length = instructions.length;
+            opcode = new int[length];
+            regA = new int[length];
+            regB = new int[length];
+            operand = new int[length];
+            for (int i = 0; i < length; i++) {
+                int instruction = instructions[i];
+                opcode[i] = (instruction >>> 22) & 0b111;
+                regA[i] = (instruction >>> 19) & 0b111;
+                regB[i] = (instruction >>> 16) & 0b111;
+                switch (opcode[i]) {
+                    case Decoder.ADD:
+                    case Decoder.NAND:
+                        operand[i] = instruction & 0b111;
+                        break;
+                    case Decoder.LW:
+                        operand[i] = (short) instruction;
+                        break;
+                    case Decoder.BEQ:
+                        // Target as an index relative to the head
+                        operand[i] = i + 1 + (short) instruction;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    private final Region[] regions = new Region[Machine.MEMORY_SIZE];   // null = not analysed yet
+    private long accelerated;   // instructions executed by the accelerator
+
+    /**
+     * Runs the loop starting at the machine's PC, if there is one.
+     *
+     * @param machine  The machine (not halted)
+     * @param maxSteps Maximum number of instructions to execute
+     * @return number of instructions executed (0 if the PC is not a loop head)
+     */
+    public long run(Machine machine, long maxSteps) {
+        int pc = machine.getPc();
+        if (pc < 0 || pc >= Machine.MEMORY_SIZE) {
+            return 0;
+        }
+
+        Region region = regions[pc];
+        if (region == null) {
+            region = analyse(machine.getMemory(), pc);
+            regions[pc] = region;
+        }
+        if (region == NOT_A_LOOP) {
+            return 0;
+        }
+
+        int[] reg = machine.getRegisters();
+        Memory mem = machine.getMemory();
+        int[] opcode = region.opcode;
+        int[] regA = region.regA;
+        int[] regB = region.regB;
+        int[] operand = region.operand;
+        int length = region.length;
+        int i = 0;
+        long count = 0;
+
+        // Batch-execute until control leaves the region (or the budget runs out)
+        while (count < maxSteps) {
+            switch (opcode[i]) {
+                case Decoder.ADD:
+                    if (operand[i] != 0) {
+                        reg[operand[i]] = reg[regA[i]] + reg[regB[i]];
+                    }
+                    i++;
+                    break;
+
+                case Decoder.NAND:
+                    if (operand[i] != 0) {
+                        reg[operand[i]] = ~(reg[regA[i]] & reg[regB[i]]);
+                    }
+                    i++;
+                    break;
+
+                case Decoder.LW:
+                    if (regB[i] != 0) {
+                        reg[regB[i]] = mem.read(operand[i]);
+                    }
+                    i++;
+                    break;
+
+                case Decoder.BEQ:
+                    i = reg[regA[i]] == reg[regB[i]] ? operand[i] : i + 1;
+                    break;
+
+                default:
+                    // NOOP
+                    i++;
+                    break;
+            }
+            count++;
+
+            if (i < 0 || i >= length) {
+                break;
+            }
+        }
+
+        // Continue exactly where stepping would have continued
+        int nextPc = region.head + i;
+        if (i == length) {
+            nextPc %= Machine.MEMORY_SIZE;     // fell through the closing BEQ
+        }
+        machine.setPc(nextPc);
+        machine.addExecuted(count);
+        accelerated += count;
+        return count;
+    }
+
+    /**
+     * Drops cached analysis that may include the overwritten word.
+     *
+     * @param address Address written by SW
+     */
+    public void invalidate(int address) {
+        for (int head = Math.max(0, address - MAX_LOOP_LENGTH + 1); head <= address; head++) {
+            regions[head] = null;
+        }
+    }
+
+    /** @return number of instructions executed by the accelerator */
+    public long getAcceleratedCount() { return accelerated; }
+
+    /**
+     * Checks whether head starts a simple innermost loop.
+     *
+     * @param mem  Memory holding the program
+     * @param head Candidate loop head
+     * @return the loop region, or NOT_A_LOOP
+     */
+    private static Region analyse(Memory mem, int head) {
+        int end = Math.min(mem.size(), head + MAX_LOOP_LENGTH);
+        for (int pc = head; pc < end; pc++) {
+            int instruction = mem.read(pc);
+            int opcode = (instruction >>> 22) & 0b111;
+            int regA = (instruction >>> 19) & 0b111;
+            int offset = (short) instruction;
+
+            switch (opcode) {
+                case Decoder.ADD:
+                case Decoder.NAND:
+                case Decoder.NOOP:
+                    break;
+
+                case Decoder.LW:
+                    // Only loads from a constant (always valid) address
+                    if (regA != 0 || offset < 0) {
+                        return NOT_A_LOOP;
+                    }
+                    break;
+
+                case Decoder.BEQ: {
+                    int target = pc + 1 + offset;
+                    if (target == head) {
+                        // Closing branch: the loop is [head, pc]
+                        int[] body = new int[pc - head + 1];
+                        mem.copyTo(head, body, body.length);
+                        return new Region(head, body);
+                    }
+                    if (target > head && target <= pc) {
+                        // Inner backward branch: not an innermost loop
+                        return NOT_A_LOOP;
+                    }
+                    break;
+                }
+
+                default:
+                    // SW, JALR, HALT
+                    return NOT_A_LOOP;
+            }
+        }
+        return NOT_A_LOOP;
+    }
+}
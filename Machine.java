@@ -1,54 +1,364 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+
 /**
  * The Machine class represents the LC-2K CPU simulator.
  * It contains:
- *  - Memory (65536 words)
+ *  - Memory (65536 words, paged copy-on-write; see Memory)
  *  - Registers (8 general-purpose)
  *  - Program Counter (PC)
  *  - Instruction counter
  *  - The Decoder (used to interpret instructions)
+ *  - The PredecodeCache (decoded copy of fetched instructions)
+ *
+ * All output goes to the Machine's own out/err streams (System.out/System.err
+ * by default), so several machines can run side by side on different threads.
+ *
+ * An optional watchdog stops programs that never halt: an instruction limit,
+ * a wall-clock limit (both checked between bursts of WATCHDOG_INTERVAL
+ * instructions) and exact-repeat detection. When it fires, the machine halts
+ * with its own HaltReason, reports it on err, and prints the final state.
+ *
+ * checkpoint() / restore() save and reload the complete machine state (see
+ * MachineCheckpoint); a Checkpointer takes checkpoints periodically.
+ * fork() clones a machine cheaply, since memory pages are shared until written.
+ *
+ * With an UndoLog set, the machine can also run backwards: stepBack(n) and
+ * runBackTo(pc) return to an earlier state of the same run.
+ *
+ * debugRun() runs under a debugger's control: it stops at breakpoints (flags
+ * in the predecoded instructions), memory watchpoints (a bitmap Itype checks
+ * on SW) and watched registers. simulate() ignores all three.
  */
 
 public class Machine {
-    private static final int MEMORY_SIZE = 65536;  // 16-bit address space
+    public static final int MEMORY_SIZE = 65536;   // 16-bit address space
     private static final int REGISTER_SIZE = 8;    // 8 registers (R0–R7)
     private static final int HALT_CODE = 0x1C00000; // used for invalid access safety
+    private static final long DECODED_HALT_CODE = PredecodeCache.decode(HALT_CODE);
+
+    // Watchdog: limits are checked every 2^16 instructions
+    private static final int WATCHDOG_INTERVAL = 1 << 16;
+    // Repeat detection: steps watched per window, and at most this many WATCHDOG_INTERVALs between windows
+    private static final int REPEAT_WINDOW = 1024;
+    private static final int MAX_REPEAT_BACKOFF = 64;
 
-    private final int[] memory;     // main memory array
+    private final Memory memory;    // main memory (paged)
     private final int[] registers;  // register file
     private int pc;                 // current program counter
     private int nextPc;             // current program counter
-    private int executed;           // number of executed instructions
+    private long executed;          // number of executed instructions
     private int instructionCount;   // number of instructions loaded from file
     private boolean halted;         // flag that tells if the machine stopped
+    private HaltReason haltReason;  // why it stopped (NONE while running)
+    private int printInterval;      // print state before every N-th instruction (0 = never)
+    private boolean printFinal;     // print the final halted state
+    private StepListener listener;  // optional observer (trace writers), null if none
+    private ExecutionEngine engine; // alternative execution engine, null = Decoder interpreter
+    private LoopAccelerator loops;  // optional loop fast-forward, null if disabled
+    private SimulationMetrics metrics; // optional live statistics, null if disabled
+
+    // Watchdog settings (0 / false = off)
+    private long instructionLimit;
+    private long timeLimitNanos;
+    private boolean repeatDetection;
+    private long deadline;          // System.nanoTime() at which the time limit is reached
+
+    // Repeat detection (Brent's cycle finding over PC + registers)
+    private int repeatLeft;         // steps left in the current detection window (0 = none)
+    private long nextRepeatWindow;  // executed count at which the next window opens
+    private int repeatBackoff;      // current number of WATCHDOG_INTERVALs between windows
+    private int savedPc;            // saved state to compare against
+    private final int[] savedRegisters;
+    private int brentPower;
+    private int brentLength;
+
+    private Checkpointer checkpointer; // optional periodic checkpoints, null if disabled
+    private UndoLog undo;           // optional history for reverse execution, null if disabled
+    private CacheSimulator cache;   // optional cache model fed by fetches and LW/SW, null if disabled
+
+    // Debugging: bitmaps over the address space (null if none set) and watched registers
+    private long[] breakpoints;
+    private long[] watchpoints;
+    private int registerWatches;    // bit r set = stop when register r changes
+    private int[] watchedValues;    // registers before the current step
+    private boolean debugging;      // inside debugRun
+    private DebugStop debugStop;    // set by a watchpoint during debugRun
+    private int watchIndex;         // address or register of the last watch hit
+    private int watchOldValue;      // its value before the hit
+    private int[] printed;          // scratch copy of the printed memory words
+    private PrintStream out;        // machine states are printed here
+    private PrintStream err;        // runtime errors (invalid memory access, ...) go here
 
     private final Decoder decoder;  // instruction decoder
+    private PredecodeCache predecoded; // decoded copy of the loaded program
     
     /** Constructor: initializes memory, registers, and decoder */
     public Machine() {
-        memory = new int[MEMORY_SIZE];
+        this(new Memory());
+    }
+
+    /** Constructor used by fork(): starts from the given memory */
+    private Machine(Memory initialMemory) {
+        memory = initialMemory;
         registers = new int[REGISTER_SIZE];
+        savedRegisters = new int[REGISTER_SIZE];
         pc = 0;
         nextPc = 0;
         executed = 0;
         halted = false;
+        haltReason = HaltReason.NONE;
+        printInterval = 1;
+        printFinal = true;
+        out = System.out;
+        err = System.err;
         decoder = new Decoder();
+        predecoded = new PredecodeCache(0);
     }
   
     /**
      * Main simulation loop.
      * Executes instructions until a HALT instruction is encountered.
+     * How much state is printed depends on setPrintInterval/setPrintFinalState;
+     * by default the state is printed before every instruction.
     */
     public void simulate() {
-        while (!halted) {
-            // Print the state before executing current instruction
+        if (listener != null) {
+            listener.started(this);
+        }
+        publishMetrics();
+        startWatchdog();
+        if (checkpointer != null) {
+            checkpointer.start(executed);
+        }
+
+        if (printInterval == 1) {
+            boolean watched = isWatched();
+            while (!halted) {
+                // Print the state before executing current instruction
+                printState();
+
+                // Execute one instruction (Fetch–Decode–Execute)
+                if (repeatLeft > 0) {
+                    advanceWatchingRepeats();
+                } else {
+                    advance();
+                }
+
+                if (metrics != null && executed % SimulationMetrics.PUBLISH_INTERVAL == 0) {
+                    publishMetrics();
+                }
+                if (watched && (executed % WATCHDOG_INTERVAL == 0
+                        || (instructionLimit > 0 && executed >= instructionLimit))) {
+                    checkWatchdog();
+                }
+                if (checkpointer != null && executed >= checkpointer.nextCheckpoint() && !halted) {
+                    checkpointer.submit(checkpoint());
+                }
+            }
+        } else if (printInterval == 0) {
+            // Batch mode: no string building or console I/O in the loop
+            run(Long.MAX_VALUE);
+        } else {
+            // Sampled mode: print the state before every N-th instruction only
+            while (!halted) {
+                printState();
+                run(printInterval - executed % printInterval);
+            }
+        }
+
+        if (listener != null) {
+            listener.halted(this);
+        }
+        publishMetrics();
+
+        // After HALT, print the final state
+        if (printFinal) {
             printState();
+        }
+    }
+
+    /**
+     * Executes instructions until the machine halts or maxSteps have run.
+     * Uses the selected ExecutionEngine unless a StepListener needs to see
+     * every single instruction.
+     *
+     * @param maxSteps Maximum number of instructions to execute
+     */
+    private void run(long maxSteps) {
+        if (metrics == null && !isWatched() && checkpointer == null) {
+            runBurst(maxSteps);
+            return;
+        }
+
+        // Live metrics, watchdog or checkpoints: run in bursts, publish and check between them.
+        // Bursts end at every multiple of the interval, where the opcode mix is sampled,
+        // even when a limit, checkpoint or printed state cuts one short.
+        int interval = metrics != null ? SimulationMetrics.PUBLISH_INTERVAL : WATCHDOG_INTERVAL;
+        long done = 0;
+        while (done < maxSteps && !halted) {
+            long burst = Math.min(maxSteps - done, interval - executed % interval);
+            if (instructionLimit > 0) {
+                burst = Math.min(burst, instructionLimit - executed);
+            }
+            if (checkpointer != null) {
+                burst = Math.max(0, Math.min(burst, checkpointer.nextCheckpoint() - executed));
+            }
+            long steps = 0;
+            while (repeatLeft > 0 && steps < burst && !halted) {
+                advanceWatchingRepeats();
+                steps++;
+            }
+            if (steps < burst && !halted) {
+                runBurst(burst - steps);
+            }
+            done += burst;
+            publishMetrics();
+            checkWatchdog();
+            if (checkpointer != null && executed >= checkpointer.nextCheckpoint() && !halted) {
+                checkpointer.submit(checkpoint());
+            }
+        }
+    }
+
+    /**
+     * Executes instructions until the machine halts or maxSteps have run,
+     * without stopping to publish metrics.
+     *
+     * @param maxSteps Maximum number of instructions to execute
+     */
+    private void runBurst(long maxSteps) {
+        if (engine != null && listener == null && undo == null && cache == null) {
+            engine.run(this, maxSteps);
+            return;
+        }
+
+        if (loops != null && listener == null && undo == null && cache == null) {
+            // Interpreter with loop fast-forward (never used while tracing every step)
+            long done = 0;
+            while (done < maxSteps && !halted) {
+                long fastForwarded = loops.run(this, maxSteps - done);
+                if (fastForwarded > 0) {
+                    done += fastForwarded;
+                } else {
+                    step();
+                    done++;
+                }
+            }
+            return;
+        }
+
+        for (long i = 0; i < maxSteps && !halted; i++) {
+            advance();
+        }
+    }
+
+    /** @return true if any watchdog check is enabled */
+    private boolean isWatched() {
+        return instructionLimit > 0 || timeLimitNanos > 0 || repeatDetection;
+    }
+
+    /** Arms the watchdog when simulate() starts; repeats are looked for right away. */
+    private void startWatchdog() {
+        deadline = System.nanoTime() + timeLimitNanos;
+        repeatBackoff = 1;
+        nextRepeatWindow = executed;
+        if (repeatDetection) {
+            startRepeatWindow();
+        }
+        checkWatchdog();
+    }
+
+    /** Stops the machine when a limit is reached, and schedules repeat detection windows. */
+    private void checkWatchdog() {
+        if (halted) {
+            return;
+        }
+        if (instructionLimit > 0 && executed >= instructionLimit) {
+            stop(HaltReason.INSTRUCTION_LIMIT, "Instruction limit of " + instructionLimit + " reached at pc " + pc);
+        } else if (timeLimitNanos > 0 && System.nanoTime() - deadline >= 0) {
+            stop(HaltReason.TIME_LIMIT, "Time limit of " + timeLimitNanos / 1_000_000 + " ms reached at pc " + pc);
+        } else if (repeatDetection && repeatLeft == 0 && executed >= nextRepeatWindow) {
+            // Watch again, less and less often while nothing is found. The schedule
+            // counts instructions, not checks, so short bursts (--every N) do not
+            // open windows any more often.
+            repeatBackoff = Math.min(repeatBackoff * 2, MAX_REPEAT_BACKOFF);
+            nextRepeatWindow = executed + (long) repeatBackoff * WATCHDOG_INTERVAL;
+            startRepeatWindow();
+        }
+    }
+
+    /** Reports why the watchdog stops the machine, and halts it. */
+    private void stop(HaltReason reason, String message) {
+        err.println(message);
+        halt(reason);
+    }
+
+    /** Starts watching the next REPEAT_WINDOW steps for an exactly repeated state. */
+    private void startRepeatWindow() {
+        repeatLeft = REPEAT_WINDOW;
+        brentPower = 1;
+        brentLength = 0;
+        saveRepeatState();
+    }
+
+    private void saveRepeatState() {
+        savedPc = pc;
+        System.arraycopy(registers, 0, savedRegisters, 0, REGISTER_SIZE);
+    }
+
+    /**
+     * Executes one instruction inside a repeat detection window.
+     *
+     * If no memory word is written, the next state only depends on PC and
+     * registers, so reaching a saved PC + registers again means the machine
+     * loops forever. A SW ends the window, since memory may have changed.
+     * Saved states are refreshed at power-of-two distances (Brent), which finds
+     * any cycle shorter than half the window.
+     */
+    private void advanceWatchingRepeats() {
+        if (((getInstruction() >>> 22) & 0b111) == Decoder.SW) {
+            repeatLeft = 0;
+            advance();
+            return;
+        }
+        advance();
+        if (halted) {
+            repeatLeft = 0;
+        } else if (pc == savedPc && Arrays.equals(registers, savedRegisters)) {
+            repeatLeft = 0;
+            stop(HaltReason.INFINITE_LOOP, "Infinite loop detected at pc " + pc);
+        } else if (--repeatLeft > 0 && ++brentLength == brentPower) {
+            brentPower <<= 1;
+            brentLength = 0;
+            saveRepeatState();
+        }
+    }
+
+    /** Hands the current progress to the SimulationMetrics, if any. */
+    private void publishMetrics() {
+        if (metrics != null) {
+            metrics.publish(executed, pc, (getInstruction() >>> 22) & 0b111, halted);
+        }
+    }
 
-            // Execute one instruction (Fetch–Decode–Execute)
+    /**
+     * Executes one instruction, reporting it to the StepListener if one is set.
+     */
+    private void advance() {
+        if (undo != null) {
+            recordUndo();
+        }
+        if (listener == null) {
             step();
+            return;
         }
 
-        // After HALT, print the final state
-        printState();
+        // Remember what is about to execute (SW may overwrite it)
+        int oldPc = pc;
+        int instruction = getInstruction();
+        step();
+        listener.stepped(this, oldPc, instruction);
     }
 
      /**
@@ -59,9 +369,19 @@ public class Machine {
      *  3. Execute: perform the operation
      */
     private void step() {
+        if (engine != null) {
+            engine.run(this, 1);
+            return;
+        }
+
         // Prepare next PC (normally PC+1)
         nextPc = (pc + 1) % MEMORY_SIZE;
 
+        // The cache model sees exactly one fetch per executed instruction
+        if (cache != null && pc >= 0 && pc < MEMORY_SIZE) {
+            cache.fetch(pc);
+        }
+
         // Decode and execute the current instruction
         decoder.decode(this);
 
@@ -77,22 +397,58 @@ public class Machine {
 
      /**
      * Fetches the instruction currently pointed to by PC.
+     * This is also used to peek at the instruction (traces, metrics, repeat
+     * detection, undo), so the cache model counts fetches in step() instead.
      *
      * @return 32-bit machine instruction
      */
      public int getInstruction() {
         if (pc >= 0 && pc < MEMORY_SIZE) {
-            return memory[pc];
+            return memory.read(pc);
         }
 
         // Return HALT code to safely stop if PC is out of range
         return HALT_CODE;  
     }
 
+    /**
+     * Fetches the instruction currently pointed to by PC in predecoded form.
+     * Each memory word is decoded only once, until it is overwritten.
+     *
+     * @return packed decoded instruction (see PredecodeCache)
+     */
+    public long getDecodedInstruction() {
+        if (pc >= 0 && pc < MEMORY_SIZE) {
+            return predecoded.get(memory, pc);
+        }
+
+        // Same safety value as getInstruction()
+        return DECODED_HALT_CODE;
+    }
+
+    /**
+     * Invalidates the predecoded copy of one memory word.
+     * Must be called after memory[address] is written while the program runs (SW).
+     *
+     * @param address Address that was written
+     */
+    public void invalidate(int address) {
+        predecoded.invalidate(address);
+        if (loops != null) {
+            loops.invalidate(address);
+        }
+        if (engine != null) {
+            engine.invalidate(address);
+        }
+    }
+
     // --- Getters and Setters ---
 
-    /** @return memory array reference */
-    public int[] getMemory() { return memory; }
+    /**
+     * @return memory reference
+     * (after writing a word while the program runs, call invalidate(address))
+     */
+    public Memory getMemory() { return memory; }
 
     /** @return registers array reference */
     public int[] getRegisters() { return registers; }
@@ -100,22 +456,526 @@ public class Machine {
     /** @return current program counter */
     public int getPc() { return pc; }
 
+    /** @return number of executed instructions */
+    public long getExecuted() { return executed; }
+
+    /** @return number of instructions loaded from file */
+    public int getInstructionCount() { return instructionCount; }
+
+    /** @return true once the machine has halted */
+    public boolean isHalted() { return halted; }
+
+    /** Sets the program counter (used by execution engines after a run). */
+    public void setPc(int newPc) { pc = newPc; }
+
+    /** Adds to the executed instruction count (used by execution engines). */
+    public void addExecuted(long count) { executed += count; }
+
     /** Sets the next program counter (used by instructions like BEQ, JALR) */
     public void setNextPc(int newPc) { nextPc = newPc; }
 
     /** Halts the machine (triggered by HALT instruction). */
-    public void halt() { halted = true; }
+    public void halt() { halt(HaltReason.HALT); }
+
+    /**
+     * Halts the machine for the given reason (the first reason is kept).
+     *
+     * @param reason Why the machine stops
+     */
+    public void halt(HaltReason reason) {
+        halted = true;
+        if (haltReason == HaltReason.NONE) {
+            haltReason = reason;
+        }
+    }
+
+    /** @return why the machine halted (NONE while it is running) */
+    public HaltReason getHaltReason() { return haltReason; }
+
+    /**
+     * Sets how often simulate() prints the state before an instruction.
+     *
+     * @param interval 1 = every instruction (default), N = every N-th, 0 = never
+     */
+    public void setPrintInterval(int interval) { printInterval = interval; }
+
+    /** Sets whether simulate() prints the final halted state (default true). */
+    public void setPrintFinalState(boolean enabled) { printFinal = enabled; }
+
+    /**
+     * Selects the engine that executes instructions (null = the Decoder interpreter).
+     * Every engine must produce exactly the same states as the interpreter.
+     */
+    public void setEngine(ExecutionEngine executionEngine) { engine = executionEngine; }
+
+    /**
+     * Enables fast-forwarding of simple loops in the interpreter (see LoopAccelerator).
+     * It only applies when no ExecutionEngine is selected and nothing traces every step.
+     */
+    public void setLoopFastForward(boolean enabled) {
+        loops = enabled ? new LoopAccelerator() : null;
+    }
+
+    /**
+     * Redirects the machine's output (used to run many machines concurrently).
+     *
+     * @param output Stream for printed states
+     * @param errors Stream for runtime error messages
+     */
+    public void setOutput(PrintStream output, PrintStream errors) {
+        out = output;
+        err = errors;
+    }
+
+    /** @return stream for runtime error messages (used by the instruction classes and engines) */
+    public PrintStream getErr() { return err; }
+
+    /**
+     * Publishes live statistics while simulate() runs (null to disable).
+     * The counters are updated between bursts of SimulationMetrics.PUBLISH_INTERVAL
+     * instructions, never inside the instruction loop.
+     */
+    public void setMetrics(SimulationMetrics simulationMetrics) { metrics = simulationMetrics; }
+
+    /**
+     * Sets the watchdog's instruction limit: the machine stops with
+     * HaltReason.INSTRUCTION_LIMIT after this many instructions.
+     *
+     * @param limit Maximum number of instructions (0 = no limit)
+     */
+    public void setInstructionLimit(long limit) { instructionLimit = limit; }
+
+    /**
+     * Sets the watchdog's wall-clock limit for simulate(): the machine stops
+     * with HaltReason.TIME_LIMIT once it has run this long.
+     *
+     * @param millis Maximum run time in milliseconds (0 = no limit)
+     */
+    public void setTimeLimit(long millis) { timeLimitNanos = millis * 1_000_000L; }
+
+    /**
+     * Enables exact-repeat detection: the machine stops with HaltReason.INFINITE_LOOP
+     * when it reaches the same PC and registers again without writing memory.
+     */
+    public void setRepeatDetection(boolean enabled) { repeatDetection = enabled; }
 
-    /** Sets total instruction count (used for printState). */
-    public void setInstructionCount(int count) { instructionCount = count; }
+    /**
+     * Takes periodic checkpoints while simulate() runs (null to disable).
+     * They are taken between instruction bursts, never inside the loop.
+     */
+    public void setCheckpointer(Checkpointer periodic) { checkpointer = periodic; }
+
+    /**
+     * Takes a snapshot of the complete machine state. Memory is forked, so
+     * this costs O(pages): the pages are copied later, when the machine writes them.
+     *
+     * @return the snapshot
+     */
+    public MachineCheckpoint checkpoint() {
+        return new MachineCheckpoint(pc, nextPc, executed, instructionCount, halted, haltReason,
+                registers.clone(), memory.fork());
+    }
+
+    /**
+     * Restores the complete machine state from a checkpoint, so that simulate()
+     * continues exactly as the checkpointed machine would have.
+     *
+     * @param checkpoint State to restore
+     */
+    public void restore(MachineCheckpoint checkpoint) {
+        // Words that change may be compiled code in the engine
+        if (engine != null) {
+            memory.forEachDifference(checkpoint.memory, engine::invalidate);
+        }
+        memory.copyFrom(checkpoint.memory);
+        System.arraycopy(checkpoint.registers, 0, registers, 0, REGISTER_SIZE);
+        pc = checkpoint.pc;
+        nextPc = checkpoint.nextPc;
+        executed = checkpoint.executed;
+        halted = checkpoint.halted;
+        haltReason = checkpoint.haltReason;
+        setInstructionCount(checkpoint.instructionCount);
+        if (loops != null) {
+            loops = new LoopAccelerator();
+        }
+    }
+
+    /**
+     * Creates an independent copy of this machine in its current state, e.g.
+     * to explore a what-if branch. Memory pages are shared copy-on-write, so
+     * a fork costs O(pages) no matter how much memory the program uses.
+     *
+     * The copy has the same registers, PC, counters, output streams and print
+     * settings. Engine, listener, loop acceleration, metrics, watchdog,
+     * checkpointer, undo log and cache model are not copied.
+     *
+     * @return the new machine
+     */
+    public Machine fork() {
+        Machine copy = new Machine(memory.fork());
+        System.arraycopy(registers, 0, copy.registers, 0, REGISTER_SIZE);
+        copy.pc = pc;
+        copy.nextPc = nextPc;
+        copy.executed = executed;
+        copy.halted = halted;
+        copy.haltReason = haltReason;
+        copy.printInterval = printInterval;
+        copy.printFinal = printFinal;
+        copy.out = out;
+        copy.err = err;
+        copy.setInstructionCount(instructionCount);
+        return copy;
+    }
+
+    /**
+     * Feeds every instruction fetch and LW/SW access to a cache model (null to
+     * disable). Accesses are seen only by the Decoder interpreter, so while a
+     * cache is set the machine executes one instruction at a time and neither
+     * engine bursts nor loop fast-forward are used.
+     *
+     * @param model Cache model
+     */
+    public void setCache(CacheSimulator model) { cache = model; }
+
+    /** @return the cache model, or null if none is set */
+    public CacheSimulator getCache() { return cache; }
+
+    /**
+     * Keeps an undo log so the machine can run backwards (null to disable).
+     * Recording starts with the current state; while a log is set the machine
+     * executes one instruction at a time.
+     */
+    public void setUndoLog(UndoLog log) { undo = log; }
+
+    /**
+     * Runs backwards: restores the state from the given number of instructions ago.
+     *
+     * Within the undo log this costs one record per instruction; further back
+     * the nearest earlier snapshot is restored and the rest is replayed.
+     * A halted machine is running again afterwards.
+     *
+     * @param steps Number of instructions to undo
+     * @return number of instructions actually undone (less when history ran out)
+     */
+    public long stepBack(long steps) {
+        if (undo == null || steps <= 0) {
+            return 0;
+        }
+        long start = executed;
+        travelTo(Math.max(0, executed - steps));
+        undo.dropSnapshotsAfter(executed);
+        return start - executed;
+    }
+
+    /**
+     * Runs backwards to the most recent earlier state where the PC was the
+     * given address, i.e. just before the last execution of that instruction.
+     *
+     * The undo log is searched first; older history is replayed one snapshot
+     * interval at a time, newest first. If the PC is not found, the machine
+     * stays where it was.
+     *
+     * @param target PC to go back to
+     * @return true if it was found
+     */
+    public boolean runBackTo(int target) {
+        if (undo == null) {
+            return false;
+        }
+        int distance = undo.distanceTo(target);
+        if (distance > 0) {
+            stepBack(distance);
+            return true;
+        }
+
+        long start = executed;
+        long segmentEnd = executed - undo.size();
+        MachineCheckpoint snapshot = undo.snapshotBefore(segmentEnd);
+        while (snapshot != null) {
+            // Replay [snapshot, segmentEnd) and remember the last visit to target
+            jumpTo(snapshot);
+            long found = -1;
+            while (executed < segmentEnd && !halted) {
+                if (pc == target) {
+                    found = executed;
+                }
+                recordUndo();
+                step();
+            }
+            if (found >= 0) {
+                travelTo(found);
+                undo.dropSnapshotsAfter(executed);
+                return true;
+            }
+            segmentEnd = snapshot.executed;
+            snapshot = undo.snapshotBefore(segmentEnd);
+        }
+
+        travelTo(start);
+        return false;
+    }
+
+    /**
+     * Moves to the state after the given number of executed instructions:
+     * backwards through the undo log or from a snapshot, forwards by replaying.
+     * Stops at the oldest reachable state if the target is no longer recorded.
+     */
+    private void travelTo(long target) {
+        if (target < executed - undo.size()) {
+            MachineCheckpoint snapshot = undo.snapshotBefore(target + 1);
+            if (snapshot == null) {
+                // History lost: go as far back as possible
+                MachineCheckpoint oldest = undo.oldestSnapshot();
+                if (oldest != null && oldest.executed < executed - undo.size()) {
+                    jumpTo(oldest);
+                    return;
+                }
+                target = executed - undo.size();
+            } else {
+                jumpTo(snapshot);
+            }
+        }
+        while (executed > target) {
+            undoStep();
+        }
+        while (executed < target && !halted) {
+            recordUndo();
+            step();
+        }
+    }
+
+    /** Restores a snapshot of the undo log; the records after it no longer apply. */
+    private void jumpTo(MachineCheckpoint snapshot) {
+        restore(snapshot);
+        undo.clearRecords();
+    }
+
+    /** Records the instruction about to execute in the undo log. */
+    private void recordUndo() {
+        if (undo.snapshotDue(executed)) {
+            undo.addSnapshot(checkpoint());
+        }
+        int writeback = Writeback.of(getInstruction(), registers, MEMORY_SIZE);
+        int index = Writeback.index(writeback);
+        int old = 0;
+        if (Writeback.kind(writeback) == Writeback.REGISTER) {
+            old = registers[index];
+        } else if (Writeback.kind(writeback) == Writeback.MEMORY) {
+            old = memory.read(index);
+        }
+        undo.push(pc, writeback, old);
+    }
+
+    /** Undoes the newest instruction in the undo log. */
+    private void undoStep() {
+        int writeback = undo.lastWriteback();
+        int index = Writeback.index(writeback);
+        if (Writeback.kind(writeback) == Writeback.REGISTER) {
+            registers[index] = undo.lastValue();
+        } else if (Writeback.kind(writeback) == Writeback.MEMORY) {
+            memory.write(index, undo.lastValue());
+            invalidate(index);
+        }
+        pc = undo.lastPc();
+        nextPc = pc;
+        executed--;
+        halted = false;
+        haltReason = HaltReason.NONE;
+        undo.pop();
+    }
+
+    /**
+     * Sets or clears a breakpoint: debugRun() stops before executing the instruction there.
+     *
+     * @param address Instruction address
+     * @param enabled true to set, false to clear
+     */
+    public void setBreakpoint(int address, boolean enabled) {
+        if (breakpoints == null) {
+            breakpoints = new long[MEMORY_SIZE / 64];
+            predecoded.setBreakpoints(breakpoints);
+        }
+        setBit(breakpoints, address, enabled);
+        predecoded.invalidate(address);
+    }
+
+    /** @return true if a breakpoint is set at the address */
+    public boolean hasBreakpoint(int address) { return testBit(breakpoints, address); }
+
+    /**
+     * Sets or clears memory watchpoints: debugRun() stops after a SW to any of these words.
+     *
+     * @param first   First address of the range
+     * @param last    Last address of the range (inclusive)
+     * @param enabled true to watch, false to stop watching
+     */
+    public void setWatchpoint(int first, int last, boolean enabled) {
+        if (watchpoints == null) {
+            watchpoints = new long[MEMORY_SIZE / 64];
+        }
+        for (int address = first; address <= last; address++) {
+            setBit(watchpoints, address, enabled);
+        }
+    }
+
+    /** @return true if SW to the address is watched */
+    public boolean isWatchpoint(int address) { return testBit(watchpoints, address); }
+
+    /**
+     * Sets or clears a register watch: debugRun() stops after an instruction changes the register.
+     *
+     * @param register Register number (1–7)
+     * @param enabled  true to watch, false to stop watching
+     */
+    public void setRegisterWatch(int register, boolean enabled) {
+        if (enabled) {
+            registerWatches |= 1 << register;
+        } else {
+            registerWatches &= ~(1 << register);
+        }
+    }
+
+    /** @return true if the register is watched */
+    public boolean isRegisterWatched(int register) { return (registerWatches & (1 << register)) != 0; }
+
+    /** @return memory watchpoint bitmap, or null if none was ever set (checked by Itype on SW) */
+    long[] getWatchpoints() { return watchpoints; }
+
+    /**
+     * Called by Itype before a SW overwrites a watched word.
+     *
+     * @param address  Address about to be written
+     * @param oldValue Its current value
+     */
+    void watchpointHit(int address, int oldValue) {
+        if (debugging) {
+            debugStop = DebugStop.WATCHPOINT;
+            watchIndex = address;
+            watchOldValue = oldValue;
+        }
+    }
+
+    /**
+     * Executes instructions one at a time under a debugger's control.
+     *
+     * Stops before an instruction with a breakpoint (except the first one, so
+     * that debugRun can continue from a breakpoint), after a SW to a watched
+     * word, after a watched register changed, when the machine halts, or after
+     * maxSteps instructions. The watchdog, metrics and checkpoints are not
+     * involved, and nothing is printed.
+     *
+     * @param maxSteps Maximum number of instructions to execute
+     * @return why it stopped
+     * @throws IllegalStateException if an ExecutionEngine is set
+     *         (breakpoints and watchpoints are only seen by the interpreter)
+     */
+    public DebugStop debugRun(long maxSteps) {
+        if (engine != null) {
+            throw new IllegalStateException("debugRun needs the interpreter; no ExecutionEngine may be set");
+        }
+        if (watchedValues == null) {
+            watchedValues = new int[REGISTER_SIZE];
+        }
+        debugging = true;
+        debugStop = null;
+        try {
+            for (long count = 0; count < maxSteps; count++) {
+                if (halted) {
+                    return DebugStop.HALTED;
+                }
+                if (count > 0 && PredecodeCache.isBreakpoint(getDecodedInstruction())) {
+                    return DebugStop.BREAKPOINT;
+                }
+                if (registerWatches != 0) {
+                    System.arraycopy(registers, 0, watchedValues, 0, REGISTER_SIZE);
+                }
+                advance();
+                if (registerWatches != 0) {
+                    checkRegisterWatches();
+                }
+                if (debugStop != null) {
+                    return debugStop;
+                }
+            }
+            return halted ? DebugStop.HALTED : DebugStop.STEP_LIMIT;
+        } finally {
+            debugging = false;
+        }
+    }
+
+    /** @return address (WATCHPOINT) or register (REGISTER_CHANGE) of the last watch hit */
+    public int getWatchIndex() { return watchIndex; }
+
+    /** @return value of the watched word or register before the last watch hit */
+    public int getWatchOldValue() { return watchOldValue; }
+
+    /** Reports the first watched register the last step changed. */
+    private void checkRegisterWatches() {
+        for (int r = 1; r < REGISTER_SIZE; r++) {
+            if ((registerWatches & (1 << r)) != 0 && registers[r] != watchedValues[r]) {
+                debugStop = DebugStop.REGISTER_CHANGE;
+                watchIndex = r;
+                watchOldValue = watchedValues[r];
+                return;
+            }
+        }
+    }
+
+    private static void setBit(long[] bitmap, int address, boolean value) {
+        if (value) {
+            bitmap[address >>> 6] |= 1L << address;
+        } else {
+            bitmap[address >>> 6] &= ~(1L << address);
+        }
+    }
+
+    private static boolean testBit(long[] bitmap, int address) {
+        return bitmap != null && (bitmap[address >>> 6] & (1L << address)) != 0;
+    }
+
+    /** Sets the observer notified of every executed instruction (null to remove). */
+    public void setStepListener(StepListener stepListener) { listener = stepListener; }
+
+    /**
+     * Sets total instruction count (used for printState).
+     * Also sizes the PredecodeCache to the loaded program.
+     */
+    public void setInstructionCount(int count) {
+        instructionCount = count;
+        predecoded = new PredecodeCache(count);
+        if (breakpoints != null) {
+            predecoded.setBreakpoints(breakpoints);
+        }
+    }
 
     /**
      * Prints the current state of the entire machine.
      * This is required by the project spec (print before each instruction).
      */
-    private void printState() {
+    public void printState() {
+        if (printed == null || printed.length != instructionCount) {
+            printed = new int[instructionCount];
+        }
+        memory.copyTo(0, printed, instructionCount);
         StringBuilder sb = new StringBuilder();
-        
+        appendState(sb, pc, printed, instructionCount, registers, halted, executed);
+        out.println(sb);
+    }
+
+    /**
+     * Formats one machine state exactly as printState() prints it
+     * (shared with the trace tools that rebuild states from a trace).
+     *
+     * @param sb               Output buffer
+     * @param pc               Program counter
+     * @param memory           Memory words (only the first instructionCount are printed)
+     * @param instructionCount Number of instructions loaded from file
+     * @param registers        Register file
+     * @param halted           Whether this is the final state
+     * @param executed         Number of executed instructions
+     */
+    public static void appendState(StringBuilder sb, int pc, int[] memory, int instructionCount,
+                                   int[] registers, boolean halted, long executed) {
         // If machine halted, print summary first
         if (halted) {
             sb.append("machine halted\n")
@@ -138,6 +998,5 @@ public class Machine {
         }
 
         sb.append("end state\n");
-        System.out.println(sb);
     }
 }
@@ -0,0 +1,188 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * The MachineCheckpoint class is a frozen copy of a Machine's state (see
+ * Machine.checkpoint), which can be written to disk and restored later so a
+ * long simulation continues exactly where it left off.
+ *
+ * Memory is held as a fork of the machine's Memory, so consecutive checkpoints
+ * share the pages that were not written in between. Pages whose words are
+ * all zero are not stored in the file.
+ *
+ * File format:
+ *   int   magic "LC2C", int version
+ *   then, deflate-compressed:
+ *   int   pc, int nextPc, long executed, int instructionCount,
+ *   byte  halted, byte haltReason (ordinal), int[8] registers,
+ *   int   page count, then per stored page: int page index, int[Memory.PAGE_SIZE] words
+ */
+public final class MachineCheckpoint {
+    private static final int MAGIC = 0x4C433243;                  // "LC2C"
+    private static final int VERSION = 2;                         // 2: 256-word pages
+
+    final int pc;
+    final int nextPc;
+    final long executed;
+    final int instructionCount;
+    final boolean halted;
+    final HaltReason haltReason;
+    final int[] registers;
+    final Memory memory;       // never written once in the checkpoint
+
+    /** Constructor (used by Machine.checkpoint and read). */
+    MachineCheckpoint(int pc, int nextPc, long executed, int instructionCount, boolean halted,
+                      HaltReason haltReason, int[] registers, Memory memory) {
+        this.pc = pc;
+        this.nextPc = nextPc;
+        this.executed = executed;
+        this.instructionCount = instructionCount;
+        this.halted = halted;
+        this.haltReason = haltReason;
+        this.registers = registers;
+        this.memory = memory;
+    }
+
+    /** @return number of executed instructions when the checkpoint was taken */
+    public long getExecuted() { return executed; }
+
+    /** @return program counter when the checkpoint was taken */
+    public int getPc() { return pc; }
+
+    /**
+     * Writes the checkpoint to a file, replacing it atomically (a crash while
+     * writing leaves the previous checkpoint intact).
+     *
+     * @param file Checkpoint file
+     * @throws IOException when writing fails
+     */
+    public void write(Path file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+
+        // Everything after the header is compressed
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new DeflaterOutputStream(bytes), 1 << 16));
+        out.writeInt(pc);
+        out.writeInt(nextPc);
+        out.writeLong(executed);
+        out.writeInt(instructionCount);
+        out.writeBoolean(halted);
+        out.writeByte(haltReason.ordinal());
+        for (int value : registers) {
+            out.writeInt(value);
+        }
+        int stored = 0;
+        for (int index = 0; index < Memory.PAGE_COUNT; index++) {
+            if (!isZero(memory.page(index))) {
+                stored++;
+            }
+        }
+        out.writeInt(stored);
+        for (int index = 0; index < Memory.PAGE_COUNT; index++) {
+            int[] page = memory.page(index);
+            if (!isZero(page)) {
+                out.writeInt(index);
+                for (int word : page) {
+                    out.writeInt(word);
+                }
+            }
+        }
+        out.close();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** @return true for a page that need not be stored (never written, or written with zeros only) */
+    private static boolean isZero(int[] page) {
+        if (page == null) {
+            return true;
+        }
+        for (int word : page) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a checkpoint file.
+     *
+     * @param file Checkpoint file
+     * @return the checkpoint
+     * @throws IOException when the file cannot be read
+     * @throws IllegalArgumentException when the file is not a valid checkpoint
+     */
+    public static MachineCheckpoint read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            InputStream stream = Channels.newInputStream(channel);
+            DataInputStream header = new DataInputStream(stream);
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                throw new IllegalArgumentException("Error: '" + file + "' is not a checkpoint file.");
+            }
+
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new InflaterInputStream(stream), 1 << 16));
+            int pc = in.readInt();
+            int nextPc = in.readInt();
+            long executed = in.readLong();
+            int instructionCount = in.readInt();
+            boolean halted = in.readBoolean();
+            int reason = in.readByte();
+            int[] registers = new int[8];
+            for (int i = 0; i < registers.length; i++) {
+                registers[i] = in.readInt();
+            }
+            int[][] pages = new int[Memory.PAGE_COUNT][];
+            int stored = in.readInt();
+            for (int i = 0; i < stored; i++) {
+                int index = in.readInt();
+                if (index < 0 || index >= Memory.PAGE_COUNT || pages[index] != null) {
+                    throw new IllegalArgumentException("Error: corrupt checkpoint file '" + file + "'.");
+                }
+                int[] page = new int[Memory.PAGE_SIZE];
+                for (int j = 0; j < page.length; j++) {
+                    page[j] = in.readInt();
+                }
+                pages[index] = page;
+            }
+            // Any PC is valid: a JALR may leave it outside memory, where NOOPs are fetched
+            if (reason < 0 || reason >= HaltReason.values().length
+                    || instructionCount < 0 || instructionCount > Machine.MEMORY_SIZE) {
+                throw new IllegalArgumentException("Error: corrupt checkpoint file '" + file + "'.");
+            }
+            return new MachineCheckpoint(pc, nextPc, executed, instructionCount, halted,
+                    HaltReason.values()[reason], registers, new Memory(pages));
+        } catch (EOFException | ZipException e) {
+            throw new IllegalArgumentException("Error: corrupt checkpoint file '" + file + "'.");
+        }
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * The Memory class is the LC-2K main memory: 65536 words, stored as pages of
+ * PAGE_SIZE words that are allocated on the first write.
+ *
+ * Pages are shared copy-on-write. fork() copies only the page table (PAGE_COUNT
+ * references), after which both memories read the same page arrays; whichever
+ * side writes a shared page first gives itself a private copy of that page.
+ * A page that was never written is the shared all-zero page, so a fresh
+ * memory, or a fork of a small program, costs a few KB instead of 256 KB.
+ *
+ * Addresses are not checked: callers test the range first (see Itype), as
+ * they did with the flat int[] this class replaces.
+ */
+public final class Memory {
+    public static final int SIZE = Machine.MEMORY_SIZE;
+    static final int PAGE_SHIFT = 8;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;      // words per page (1 KB)
+    static final int PAGE_MASK = PAGE_SIZE - 1;
+    static final int PAGE_COUNT = SIZE / PAGE_SIZE;
+
+    // Read-only page standing in for every page that was never written
+    private static final int[] ZERO_PAGE = new int[PAGE_SIZE];
+
+    private final int[][] pages;        // page table
+    private final boolean[] owned;      // pages no other memory references (written in place)
+
+    /** Constructor: all words zero, no page allocated */
+    public Memory() {
+        pages = new int[PAGE_COUNT][];
+        Arrays.fill(pages, ZERO_PAGE);
+        owned = new boolean[PAGE_COUNT];
+    }
+
+    /**
+     * Constructor used by MachineCheckpoint.read: takes ownership of the pages.
+     *
+     * @param pageTable PAGE_COUNT pages, null for an all-zero page
+     */
+    Memory(int[][] pageTable) {
+        this();
+        for (int index = 0; index < PAGE_COUNT; index++) {
+            if (pageTable[index] != null) {
+                pages[index] = pageTable[index];
+                owned[index] = true;
+            }
+        }
+    }
+
+    /** @return number of words (the size of the address space) */
+    public int size() { return SIZE; }
+
+    /**
+     * Reads one word.
+     *
+     * @param address Address in [0, size())
+     * @return the word
+     */
+    public int read(int address) {
+        return pages[address >>> PAGE_SHIFT][address & PAGE_MASK];
+    }
+
+    /**
+     * Writes one word, first copying its page if the page is shared.
+     * (While a program runs, also call Machine.invalidate(address).)
+     *
+     * @param address Address in [0, size())
+     * @param value   New value
+     */
+    public void write(int address, int value) {
+        writablePage(address >>> PAGE_SHIFT)[address & PAGE_MASK] = value;
+    }
+
+    /**
+     * Writes words[0 .. count-1] to addresses 0 .. count-1 (program loading).
+     *
+     * @param words Words to write
+     * @param count Number of words
+     */
+    public void load(int[] words, int count) {
+        for (int address = 0; address < count; address += PAGE_SIZE) {
+            System.arraycopy(words, address, writablePage(address >>> PAGE_SHIFT), 0,
+                    Math.min(PAGE_SIZE, count - address));
+        }
+    }
+
+    /**
+     * Copies a range of words out of memory.
+     *
+     * @param address     First address to copy
+     * @param destination Receives the words, starting at index 0
+     * @param count       Number of words (address + count <= size())
+     */
+    public void copyTo(int address, int[] destination, int count) {
+        int copied = 0;
+        while (copied < count) {
+            int offset = (address + copied) & PAGE_MASK;
+            int chunk = Math.min(PAGE_SIZE - offset, count - copied);
+            System.arraycopy(pages[(address + copied) >>> PAGE_SHIFT], offset, destination, copied, chunk);
+            copied += chunk;
+        }
+    }
+
+    /**
+     * Creates a copy of this memory in O(PAGE_COUNT): the copy shares every
+     * page, and each side copies a page only when it writes it.
+     *
+     * @return the copy
+     */
+    public Memory fork() {
+        Memory copy = new Memory();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Replaces the contents of this memory with those of another one, sharing
+     * its pages copy-on-write (like fork(), but into an existing memory).
+     *
+     * @param source Memory to copy
+     */
+    public void copyFrom(Memory source) {
+        System.arraycopy(source.pages, 0, pages, 0, PAGE_COUNT);
+        Arrays.fill(source.owned, false);
+        Arrays.fill(owned, false);
+    }
+
+    /**
+     * Reports every address whose word differs between this memory and another
+     * one. Pages the two share are skipped without being compared.
+     *
+     * @param other   Memory to compare with
+     * @param changed Called with each differing address
+     */
+    public void forEachDifference(Memory other, IntConsumer changed) {
+        for (int index = 0; index < PAGE_COUNT; index++) {
+            int[] mine = pages[index];
+            int[] theirs = other.pages[index];
+            if (mine == theirs) {
+                continue;
+            }
+            for (int offset = 0; offset < PAGE_SIZE; offset++) {
+                if (mine[offset] != theirs[offset]) {
+                    changed.accept((index << PAGE_SHIFT) | offset);
+                }
+            }
+        }
+    }
+
+    /** @return number of pages this memory has allocated or shares (not counting zero pages) */
+    public int getAllocatedPages() {
+        int allocated = 0;
+        for (int[] page : pages) {
+            if (page != ZERO_PAGE) {
+                allocated++;
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * Returns one page for writing, copying it first if it is shared. Used by
+     * ObjectLoader to copy a binary program straight into the pages.
+     *
+     * @param index Page number
+     * @return the page, owned by this memory
+     */
+    int[] writablePage(int index) {
+        if (!owned[index]) {
+            pages[index] = pages[index].clone();
+            owned[index] = true;
+        }
+        return pages[index];
+    }
+
+    /**
+     * Returns one page for MachineCheckpoint. The array must not be modified;
+     * it is only stable while no one writes this memory (e.g. a fork taken
+     * for the checkpoint).
+     *
+     * @param index Page number
+     * @return the page, or null if it was never written
+     */
+    int[] page(int index) {
+        return pages[index] == ZERO_PAGE ? null : pages[index];
+    }
+}
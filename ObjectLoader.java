@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The ObjectLoader class loads machine code files into Machine memory.
+ *
+ * Two formats are supported:
+ *  - Text (.obj): one decimal integer per line, as written by the assemblers.
+ *    The file is memory-mapped and the numbers are parsed straight from the
+ *    bytes, without creating a String per line.
+ *  - Binary: magic "LC2O", word count, then the words as little-endian int32.
+ *    Loading is a bulk copy per memory page.
+ *
+ * The format is detected from the first bytes of the file.
+ */
+public class ObjectLoader {
+    static final int MAGIC = 0x4F32434C;    // "LC2O" read as little-endian
+    static final int HEADER_SIZE = 8;       // magic + word count
+
+    private ObjectLoader() {
+    }
+
+    /**
+     * Program entry point: converts a text object file to the binary format.
+     *
+     * @param args Command-line arguments (text input file, binary output file)
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java ObjectLoader <machine_code_file> <binary_output_file>");
+            System.exit(1);
+        }
+
+        try {
+            int[] words = new int[65536];
+            int count = load(Paths.get(args[0]), words);
+            writeBinary(Paths.get(args[1]), words, count);
+        } catch (IOException e) {
+            System.err.println("Error converting file: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loads an object file (text or binary) into memory, starting at address 0.
+     *
+     * @param file   Object file
+     * @param memory Destination memory
+     * @return number of words loaded
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line is not a valid integer
+     *         ("Invalid machine code at line N") or the program does not fit
+     */
+    public static int load(Path file, int[] memory) throws IOException {
+        return load(file, memory, null);
+    }
+
+    /**
+     * Loads an object file (text or binary) into a Machine's memory, starting at address 0.
+     *
+     * @param file   Object file
+     * @param memory Destination memory
+     * @return number of words loaded
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException as for load(Path, int[])
+     */
+    public static int load(Path file, Memory memory) throws IOException {
+        // Words go straight into the pages, so only the pages the program covers are allocated
+        return load(file, null, memory);
+    }
+
+    /** Loads into exactly one of array and memory (the other is null). */
+    private static int load(Path file, int[] array, Memory memory) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return 0;
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            bytes.order(ByteOrder.LITTLE_ENDIAN);
+
+            int capacity = memory != null ? memory.size() : array.length;
+            if (size >= HEADER_SIZE && bytes.getInt(0) == MAGIC) {
+                return loadBinary(bytes, array, memory, capacity);
+            }
+            return loadText(bytes, array, memory, capacity);
+        }
+    }
+
+    /**
+     * Writes words in the binary object format.
+     *
+     * @param file  Destination file
+     * @param words Words to write
+     * @param count Number of words to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeBinary(Path file, int[] words, int count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(count);
+        buffer.asIntBuffer().put(words, 0, count);
+        buffer.rewind();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static int loadBinary(ByteBuffer bytes, int[] array, Memory memory, int capacity) {
+        int count = bytes.getInt(4);
+        if (count < 0 || count > capacity) {
+            throw new IllegalArgumentException("Invalid word count in binary object file: " + count);
+        }
+        if (bytes.capacity() < HEADER_SIZE + (long) count * 4) {
+            throw new IllegalArgumentException("Binary object file is truncated");
+        }
+
+        // Bulk copy of all words (one per page when loading into Memory)
+        bytes.position(HEADER_SIZE);
+        IntBuffer words = bytes.asIntBuffer();
+        if (memory == null) {
+            words.get(array, 0, count);
+            return count;
+        }
+        for (int address = 0; address < count; address += Memory.PAGE_SIZE) {
+            words.get(memory.writablePage(address >>> Memory.PAGE_SHIFT), 0,
+                    Math.min(Memory.PAGE_SIZE, count - address));
+        }
+        return count;
+    }
+
+    /**
+     * Parses one decimal integer per line directly from the mapped bytes.
+     * Follows Files.readAllLines + Integer.parseInt(line.trim()): lines end at
+     * \n, \r or \r\n, and surrounding spaces/control characters are ignored.
+     */
+    private static int loadText(ByteBuffer bytes, int[] array, Memory memory, int capacity) throws IOException {
+        int limit = bytes.limit();
+        int count = 0;
+        int start = 0;
+
+        while (start < limit) {
+            // Find the end of the line
+            int end = start;
+            while (end < limit) {
+                byte b = bytes.get(end);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                end++;
+            }
+
+            if (count == capacity) {
+                throw new IllegalArgumentException("Program does not fit in memory (" + capacity + " words)");
+            }
+
+            // The error reports the line number the same way the Simulator always has
+            int word = parseLine(bytes, start, end, count + 2);
+            if (memory != null) {
+                memory.write(count, word);
+            } else {
+                array[count] = word;
+            }
+            count++;
+
+            // Skip the terminator (\r\n counts as one)
+            if (end < limit && bytes.get(end) == '\r' && end + 1 < limit && bytes.get(end + 1) == '\n') {
+                end++;
+            }
+            start = end + 1;
+        }
+        return count;
+    }
+
+    private static int parseLine(ByteBuffer bytes, int start, int end, int reportedLine) throws IOException {
+        // trim(): drop characters <= ' ' at both ends
+        while (start < end && (bytes.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw invalidLine(reportedLine);
+        }
+
+        // Accumulate negatively so that Integer.MIN_VALUE parses (like Integer.parseInt)
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int multiplyMin = limit / 10;
+        int result = 0;
+        for (; i < end; i++) {
+            int b = bytes.get(i) & 0xFF;
+            if (b >= 0x80) {
+                // Non-ASCII text: let the JDK decide, exactly as before
+                return parseDecoded(bytes, start, end, reportedLine);
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || result < multiplyMin) {
+                throw invalidLine(reportedLine);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw invalidLine(reportedLine);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static int parseDecoded(ByteBuffer bytes, int start, int end, int reportedLine) throws IOException {
+        ByteBuffer line = bytes.duplicate();
+        line.position(start).limit(end);
+        CharBuffer text = StandardCharsets.UTF_8.newDecoder().decode(line);
+        try {
+            return Integer.parseInt(text.toString().trim());
+        } catch (NumberFormatException e) {
+            throw invalidLine(reportedLine);
+        }
+    }
+
+    private static IllegalArgumentException invalidLine(int reportedLine) {
+        return new IllegalArgumentException("Invalid machine code at line " + reportedLine);
+    }
+}
@@ -1,21 +1,18 @@
 public class Otype {
     // Singleton instance: ensures only one instance of Otype exists.
-    private static Otype instance;
+    // Initialized with the class (thread-safe, no lazy check).
+    private static final Otype INSTANCE = new Otype();
 
     private Otype() {
     }
 
     /**
      * Provides access to the single shared instance of Otype.
-     * If it doesn’t exist yet, create a new one.
      *
      * @return The shared Otype instance.
      */
     public static Otype getInstance() {
-        if (instance == null) {
-            instance = new Otype();
-        }
-        return instance;
+        return INSTANCE;
     }
 
     /**
@@ -37,8 +34,8 @@ public class Otype {
 
             default:
                 // Invalid opcode: print an error message and stop execution.
-                System.err.println("Unknown O-type opcode: " + opcode);
-                machine.halt();
+                machine.getErr().println("Unknown O-type opcode: " + opcode);
+                machine.halt(HaltReason.INVALID_OPCODE);
                 break;
         }
     }
@@ -0,0 +1,581 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * The PipelineEngine class runs LC-2K programs on a cycle-accurate model of
+ * the classic 5-stage pipeline (IF, ID, EX, MEM, WB), for cycle counts of
+ * pipelined hardware. Architecturally it behaves exactly like the Decoder
+ * interpreter; it additionally counts clock cycles.
+ *
+ * The modelled hardware:
+ *  - Registers are written in the first half of WB and read in the second
+ *    half of ID, so WB needs no forwarding path.
+ *  - EX takes its operands from the EX/MEM and MEM/WB pipeline registers
+ *    when an older instruction in flight writes them (data forwarding).
+ *  - A load followed immediately by an instruction that uses its result
+ *    stalls that instruction in ID for one cycle (load-use hazard).
+ *  - Branches are predicted not taken. BEQ and JALR resolve in MEM; when
+ *    the next PC is not PC+1, the three younger instructions are flushed.
+ *  - A SW that overwrites an instruction already fetched flushes it and
+ *    everything after it, so self-modifying code behaves as in the interpreter.
+ *
+ * An instruction counts as executed when it leaves WB. When run() has
+ * executed its budget, it stops right after that WB, with the rest of the
+ * cycle still to do. The pipeline contents are kept, so running in several
+ * bursts gives the same cycle count as a single run. If the machine's state
+ * changed in between (PC, executed count or registers), the pipeline starts
+ * empty again.
+ *
+ * getReport() gives cycles, CPI, stalls and flushes; setTrace() writes the
+ * pipeline registers after every cycle. Run as a program, the class checks
+ * each given object file against the interpreter and prints its report.
+ */
+public class PipelineEngine implements ExecutionEngine {
+    private static final int MEMORY_SIZE = Machine.MEMORY_SIZE;
+    private static final int NOOP_WORD = Decoder.NOOP << 22;
+    static final long VALIDATION_LIMIT = 100_000_000L; // main() compares programs that never halt here
+    private static final String[] NAMES = {"add", "nand", "lw", "sw", "beq", "jalr", "halt", "noop"};
+
+    /** One pipeline register. valid = it holds an instruction the next stage has not consumed. */
+    private static final class Latch {
+        boolean valid;
+        int pc;
+        int instruction;
+        int opcode;
+        int regA;
+        int regB;
+        int dest;           // register written in WB (0 = none)
+        int offset;         // sign-extended I-type offset
+        int valueA;         // operands as read in ID (EX forwards newer values)
+        int valueB;
+        int result;         // ALU result, address, loaded value or return address
+        int nextPc;         // resolved next PC (BEQ, JALR)
+        boolean fault;      // invalid LW/SW address, reported in WB
+
+        void copyFrom(Latch other) {
+            valid = other.valid;
+            pc = other.pc;
+            instruction = other.instruction;
+            opcode = other.opcode;
+            regA = other.regA;
+            regB = other.regB;
+            dest = other.dest;
+            offset = other.offset;
+            valueA = other.valueA;
+            valueB = other.valueB;
+            result = other.result;
+            nextPc = other.nextPc;
+            fault = other.fault;
+        }
+    }
+
+    private final Latch ifId = new Latch();
+    private final Latch idEx = new Latch();
+    private final Latch exMem = new Latch();
+    private final Latch memWb = new Latch();
+    private int fetchPc;
+    private boolean midCycle;           // stopped after WB; MEM, EX, ID and IF are still to do
+
+    // State the machine is expected to be in when run() is called again
+    private Machine machine;
+    private int expectedPc;
+    private long expectedExecuted;
+    private final int[] expectedRegisters = new int[8];
+
+    // Statistics
+    private long cycles;
+    private long retired;
+    private long stalls;
+    private long flushes;
+    private long flushedInstructions;
+    private long branches;
+    private long takenBranches;
+
+    private BufferedWriter trace;       // per-cycle pipeline registers, null if off
+
+    /**
+     * Writes the pipeline registers after every cycle to the writer (null to stop).
+     * The writer is buffered by this class; call flushTrace() at the end.
+     *
+     * @param out Destination of the trace
+     */
+    public void setTrace(Writer out) {
+        trace = out == null ? null : new BufferedWriter(out, 1 << 16);
+    }
+
+    /**
+     * Flushes the trace writer.
+     *
+     * @throws IOException if writing fails
+     */
+    public void flushTrace() throws IOException {
+        if (trace != null) {
+            trace.flush();
+        }
+    }
+
+    @Override
+    public void run(Machine target, long maxSteps) {
+        if (target != machine || target.getPc() != expectedPc || target.getExecuted() != expectedExecuted
+                || !Arrays.equals(target.getRegisters(), expectedRegisters)) {
+            // First run, or the state was changed from outside: start with an empty pipeline
+            machine = target;
+            clear(target.getPc());
+        }
+
+        int[] reg = target.getRegisters();
+        Memory mem = target.getMemory();
+        long count = 0;
+        boolean halted = false;
+
+        if (midCycle) {
+            midCycle = false;
+            finishCycle(reg, mem);
+        }
+        while (true) {
+            cycles++;
+
+            // --- WB: the oldest instruction leaves the pipeline ---
+            if (memWb.valid) {
+                memWb.valid = false;
+                count++;
+                if (memWb.dest != 0) {
+                    reg[memWb.dest] = memWb.result;
+                }
+                if (memWb.fault) {
+                    target.getErr().println("Invalid memory access at " + memWb.result);
+                    target.halt(HaltReason.MEMORY_FAULT);
+                    halted = true;
+                } else if (memWb.opcode == Decoder.HALT) {
+                    target.halt(HaltReason.HALT);
+                    halted = true;
+                }
+                if (halted || count == maxSteps) {
+                    midCycle = !halted;
+                    break;
+                }
+            }
+            finishCycle(reg, mem);
+        }
+        retired += count;
+
+        // The next instruction is the oldest one still in flight
+        int pc;
+        if (halted) {
+            pc = (memWb.pc + 1) % MEMORY_SIZE;
+        } else if (exMem.valid) {
+            pc = exMem.pc;
+        } else if (idEx.valid) {
+            pc = idEx.pc;
+        } else if (ifId.valid) {
+            pc = ifId.pc;
+        } else {
+            pc = fetchPc;
+        }
+        reg[0] = 0;
+        target.setPc(pc);
+        target.addExecuted(count);
+
+        expectedPc = pc;
+        expectedExecuted = target.getExecuted();
+        System.arraycopy(reg, 0, expectedRegisters, 0, expectedRegisters.length);
+        if (halted) {
+            // Nothing in flight survives a halt
+            machine = null;
+        }
+    }
+
+    /**
+     * Flushes every fetched instruction from the overwritten address on
+     * (self-modifying code): it is fetched again after the store.
+     */
+    @Override
+    public void invalidate(int address) {
+        if (exMem.valid && exMem.pc == address) {
+            squash(exMem);
+            squash(idEx);
+            squash(ifId);
+        } else if (idEx.valid && idEx.pc == address) {
+            squash(idEx);
+            squash(ifId);
+        } else if (ifId.valid && ifId.pc == address) {
+            squash(ifId);
+        } else {
+            return;
+        }
+        flushes++;
+        fetchPc = address;
+    }
+
+    /** @return number of clock cycles simulated */
+    public long getCycles() { return cycles; }
+
+    /** @return number of instructions that completed WB */
+    public long getRetired() { return retired; }
+
+    /** @return number of load-use stall cycles */
+    public long getStalls() { return stalls; }
+
+    /** @return number of pipeline flushes (taken branches, jumps and code overwrites) */
+    public long getFlushes() { return flushes; }
+
+    /**
+     * Builds the cycle report.
+     *
+     * @return multi-line report
+     */
+    public String getReport() {
+        double cpi = retired == 0 ? 0 : (double) cycles / retired;
+        return String.format("pipeline: %d cycles, %d instructions, CPI %.3f%n"
+                        + "\tload-use stalls: %d%n"
+                        + "\tflushes: %d (%d instructions squashed)%n"
+                        + "\tbranches: %d (%d taken)%n",
+                cycles, retired, cpi, stalls, flushes, flushedInstructions, branches, takenBranches);
+    }
+
+    // --- Pipeline stages ---
+
+    /** Runs MEM, EX, ID and IF of the current cycle (WB is done by run). */
+    private void finishCycle(int[] reg, Memory mem) {
+        boolean redirected = memoryStage(mem);
+        if (!redirected) {
+            executeStage(reg);
+            boolean stalled = decodeStage(reg);
+            if (!stalled) {
+                fetchStage(mem);
+            }
+        }
+        if (trace != null) {
+            writeTrace();
+        }
+    }
+
+    /** MEM: loads, stores, and branch resolution. @return true if the pipeline was redirected */
+    private boolean memoryStage(Memory mem) {
+        memWb.copyFrom(exMem);
+        if (!exMem.valid) {
+            return false;
+        }
+        exMem.valid = false;
+
+        switch (memWb.opcode) {
+            case Decoder.LW:
+                if (memWb.dest != 0) {
+                    if (memWb.result < 0 || memWb.result >= MEMORY_SIZE) {
+                        memWb.fault = true;
+                        memWb.dest = 0;
+                    } else {
+                        memWb.result = mem.read(memWb.result);
+                    }
+                }
+                return false;
+
+            case Decoder.SW:
+                if (memWb.result < 0 || memWb.result >= MEMORY_SIZE) {
+                    memWb.fault = true;
+                } else {
+                    mem.write(memWb.result, memWb.valueB);
+                    // Drops predecoded copies, and flushes the word here if it was fetched
+                    machine.invalidate(memWb.result);
+                }
+                return false;
+
+            case Decoder.BEQ:
+            case Decoder.JALR:
+                if (memWb.opcode == Decoder.BEQ) {
+                    branches++;
+                    if (memWb.nextPc != (memWb.pc + 1) % MEMORY_SIZE) {
+                        takenBranches++;
+                    }
+                }
+                if (memWb.nextPc == (memWb.pc + 1) % MEMORY_SIZE) {
+                    return false;
+                }
+                // Predicted not taken: flush the younger instructions, fetch the target next cycle
+                squash(idEx);
+                squash(ifId);
+                flushes++;
+                flushedInstructions++;      // the wrong-path fetch this cycle is suppressed too
+                fetchPc = memWb.nextPc;
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /** EX: ALU, addresses and branch targets, with operands forwarded from older instructions. */
+    private void executeStage(int[] reg) {
+        if (!idEx.valid) {
+            exMem.valid = false;
+            return;
+        }
+        exMem.copyFrom(idEx);
+        idEx.valid = false;
+
+        int a = forward(exMem.regA, reg);
+        int b = forward(exMem.regB, reg);
+        int next = (exMem.pc + 1) % MEMORY_SIZE;
+        exMem.nextPc = next;
+        exMem.valueB = b;
+        switch (exMem.opcode) {
+            case Decoder.ADD:
+                exMem.result = a + b;
+                break;
+            case Decoder.NAND:
+                exMem.result = ~(a & b);
+                break;
+            case Decoder.LW:
+            case Decoder.SW:
+                exMem.result = a + exMem.offset;
+                break;
+            case Decoder.BEQ:
+                exMem.nextPc = a == b ? exMem.pc + 1 + exMem.offset : next;
+                break;
+            case Decoder.JALR:
+                exMem.result = exMem.pc + 1;
+                exMem.nextPc = exMem.regA != exMem.regB ? a : next;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Operand value for EX: the instruction just ahead (now in MEM/WB) may
+     * not have written it back yet; anything older already has.
+     */
+    private int forward(int r, int[] reg) {
+        if (r == 0) {
+            return 0;
+        }
+        if (memWb.valid && memWb.dest == r) {
+            return memWb.result;
+        }
+        return reg[r];
+    }
+
+    /** ID: decode and read registers, or stall on a load-use hazard. @return true if stalled */
+    private boolean decodeStage(int[] reg) {
+        if (!ifId.valid) {
+            idEx.valid = false;
+            return false;
+        }
+        int instruction = ifId.instruction;
+        int opcode = (instruction >>> 22) & 0b111;
+        int regA = (instruction >>> 19) & 0b111;
+        int regB = (instruction >>> 16) & 0b111;
+
+        // The load ahead delivers its value only at the end of MEM
+        if (exMem.valid && exMem.opcode == Decoder.LW && exMem.dest != 0 && uses(opcode, regA, regB, exMem.dest)) {
+            idEx.valid = false;
+            stalls++;
+            return true;
+        }
+
+        idEx.valid = true;
+        idEx.pc = ifId.pc;
+        idEx.instruction = instruction;
+        idEx.opcode = opcode;
+        idEx.regA = regA;
+        idEx.regB = regB;
+        idEx.offset = (short) (instruction & 0xFFFF);
+        idEx.valueA = reg[regA];
+        idEx.valueB = reg[regB];
+        idEx.fault = false;
+        switch (opcode) {
+            case Decoder.ADD:
+            case Decoder.NAND:
+                idEx.dest = instruction & 0b111;
+                break;
+            case Decoder.LW:
+            case Decoder.JALR:
+                idEx.dest = regB;
+                break;
+            default:
+                idEx.dest = 0;
+                break;
+        }
+        ifId.valid = false;
+        return false;
+    }
+
+    /** @return true if an instruction reads register r (r != 0) */
+    private static boolean uses(int opcode, int regA, int regB, int r) {
+        switch (opcode) {
+            case Decoder.ADD:
+            case Decoder.NAND:
+            case Decoder.SW:
+            case Decoder.BEQ:
+                return regA == r || regB == r;
+            case Decoder.LW:
+            case Decoder.JALR:
+                return regA == r;
+            default:
+                return false;
+        }
+    }
+
+    /** IF: fetch the next word (outside memory, a NOOP as in the interpreter). */
+    private void fetchStage(Memory mem) {
+        ifId.valid = true;
+        ifId.pc = fetchPc;
+        ifId.instruction = fetchPc >= 0 && fetchPc < MEMORY_SIZE ? mem.read(fetchPc) : NOOP_WORD;
+        fetchPc = (fetchPc + 1) % MEMORY_SIZE;
+    }
+
+    /** Discards an instruction in flight (counted only if the latch held one, not a bubble). */
+    private void squash(Latch latch) {
+        if (latch.valid) {
+            latch.valid = false;
+            flushedInstructions++;
+        }
+    }
+
+    /** Empties the pipeline; fetching starts at pc. */
+    private void clear(int pc) {
+        ifId.valid = false;
+        idEx.valid = false;
+        exMem.valid = false;
+        memWb.valid = false;
+        midCycle = false;
+        fetchPc = pc;
+    }
+
+    // --- Trace ---
+
+    private void writeTrace() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("cycle ").append(cycles).append('\n');
+        appendLatch(sb, "IF/ID ", ifId);
+        appendLatch(sb, "ID/EX ", idEx);
+        appendLatch(sb, "EX/MEM", exMem);
+        appendLatch(sb, "MEM/WB", memWb);
+        try {
+            trace.write(sb.toString());
+        } catch (IOException e) {
+            machine.getErr().println("Error writing pipeline trace: " + e.getMessage());
+            trace = null;
+        }
+    }
+
+    private void appendLatch(StringBuilder sb, String name, Latch latch) {
+        sb.append('\t').append(name).append(' ');
+        if (!latch.valid) {
+            sb.append("bubble\n");
+            return;
+        }
+        int instruction = latch.instruction;
+        int opcode = (instruction >>> 22) & 0b111;
+        sb.append("pc ").append(latch.pc).append(' ').append(NAMES[opcode])
+          .append(' ').append((instruction >>> 19) & 0b111)
+          .append(' ').append((instruction >>> 16) & 0b111)
+          .append(' ').append(opcode <= Decoder.NAND ? instruction & 0b111 : (short) instruction);
+        if (latch == idEx) {
+            sb.append(" read ").append(latch.valueA).append(' ').append(latch.valueB);
+        } else if (latch != ifId) {
+            sb.append(" result ").append(latch.result);
+            if (opcode == Decoder.BEQ || opcode == Decoder.JALR) {
+                sb.append(" next ").append(latch.nextPc);
+            }
+        }
+        sb.append('\n');
+    }
+
+    // --- Validation against the interpreter ---
+
+    /**
+     * Program entry point: runs each object file on the interpreter and on the
+     * pipeline, reports any difference in the final state, and prints the
+     * pipeline's cycle report.
+     *
+     * @param args Object files
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java PipelineEngine <machine_code_file>...");
+            System.exit(1);
+        }
+
+        int mismatches = 0;
+        for (String file : args) {
+            try {
+                Machine program = new Machine();
+                program.setPrintInterval(0);
+                program.setPrintFinalState(false);
+                program.setInstructionCount(ObjectLoader.load(Paths.get(file), program.getMemory()));
+
+                PipelineEngine engine = new PipelineEngine();
+                String difference = validate(program, VALIDATION_LIMIT, engine);
+                if (difference != null) {
+                    mismatches++;
+                }
+                System.out.println(file + ": " + (difference == null ? "matches the interpreter" : difference));
+                System.out.print(engine.getReport());
+            } catch (IOException e) {
+                System.err.println("Error reading file: " + e.getMessage());
+                System.exit(1);
+            } catch (IllegalArgumentException e) {
+                System.err.println(file + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+
+    /**
+     * Runs a loaded program to completion (or the instruction limit) twice,
+     * on the Decoder interpreter and on the pipeline, and compares the final
+     * architectural state. The given machine itself is left unchanged.
+     *
+     * @param program Machine with the program loaded (no engine set)
+     * @param limit   Instruction limit for programs that never halt
+     * @param engine  Pipeline to run it on (its statistics describe the run)
+     * @return description of the first difference, or null if they match
+     */
+    static String validate(Machine program, long limit, PipelineEngine engine) {
+        Machine reference = program.fork();
+        reference.setInstructionLimit(limit);
+        reference.simulate();
+
+        Machine pipelined = program.fork();
+        pipelined.setInstructionLimit(limit);
+        pipelined.setEngine(engine);
+        pipelined.simulate();
+
+        return compare(reference, pipelined);
+    }
+
+    /** @return description of the first difference in architectural state, or null */
+    static String compare(Machine expected, Machine actual) {
+        if (expected.getPc() != actual.getPc()) {
+            return "pc " + actual.getPc() + ", expected " + expected.getPc();
+        }
+        if (expected.getExecuted() != actual.getExecuted()) {
+            return actual.getExecuted() + " instructions executed, expected " + expected.getExecuted();
+        }
+        if (expected.getHaltReason() != actual.getHaltReason()) {
+            return "halt reason " + actual.getHaltReason() + ", expected " + expected.getHaltReason();
+        }
+        for (int r = 0; r < 8; r++) {
+            if (expected.getRegisters()[r] != actual.getRegisters()[r]) {
+                return "reg[" + r + "] " + actual.getRegisters()[r] + ", expected " + expected.getRegisters()[r];
+            }
+        }
+        int[] first = new int[1];
+        first[0] = -1;
+        expected.getMemory().forEachDifference(actual.getMemory(), address -> {
+            if (first[0] < 0) {
+                first[0] = address;
+            }
+        });
+        if (first[0] >= 0) {
+            return "mem[" + first[0] + "] " + actual.getMemory().read(first[0])
+                    + ", expected " + expected.getMemory().read(first[0]);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+/**
+ * The PredecodeCache class keeps an already-decoded copy of the memory words
+ * that the Machine has fetched as instructions.
+ *
+ * Each entry is one packed long, so a fetch costs a single array load instead
+ * of re-extracting the fields with shifts/masks and re-sign-extending the offset:
+ *  - bit 63      : valid flag (0 means "not decoded yet")
+ *  - bit 62      : breakpoint flag (see setBreakpoints; ignored by the Decoder)
+ *  - bits 40–38  : opcode
+ *  - bits 37–35  : regA (rs)
+ *  - bits 34–32  : regB (rt, or rd for JALR)
+ *  - bits 31–0   : immediate (destReg for R-type, sign-extended offset for I-type)
+ *
+ * Entries are decoded lazily on first fetch, and a single entry is invalidated
+ * whenever the word at that address is overwritten (SW), so self-modifying code
+ * is always re-decoded.
+ *
+ * The cache only covers the loaded program (addresses below its size); words
+ * fetched from above it are decoded on the fly without being stored.
+ *
+ * Breakpoints are patched into the entries when they are decoded, so looking
+ * for them costs nothing beyond the fetch itself.
+ */
+public class PredecodeCache {
+    private static final long VALID = 1L << 63;
+    private static final long BREAKPOINT = 1L << 62;
+
+    private final long[] entries;   // one packed entry per memory word
+    private long[] breakpoints;     // bitmap over all addresses, null if none
+
+    /** Constructor: creates an empty cache covering addresses 0..size-1 */
+    public PredecodeCache(int size) {
+        entries = new long[size];
+    }
+
+    /**
+     * Returns the decoded form of the word at address, decoding it on first use.
+     *
+     * @param memory  The machine memory the cache mirrors
+     * @param address Address of the instruction (must be a valid memory address)
+     * @return packed decoded instruction
+     */
+    public long get(Memory memory, int address) {
+        if (address >= entries.length) {
+            // Outside the loaded program: not worth caching
+            return decodeAt(memory, address);
+        }
+
+        long entry = entries[address];
+        if (entry == 0) {
+            entry = decodeAt(memory, address);
+            entries[address] = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * Sets the breakpoint bitmap (bit address & 63 of word address >>> 6).
+     * Call invalidate(address) after changing a bit, so the entry is re-decoded.
+     *
+     * @param bitmap Breakpoint bits, shared with the Machine (null for none)
+     */
+    public void setBreakpoints(long[] bitmap) {
+        breakpoints = bitmap;
+        Arrays.fill(entries, 0);
+    }
+
+    private long decodeAt(Memory memory, int address) {
+        long entry = decode(memory.read(address));
+        if (breakpoints != null && (breakpoints[address >>> 6] & (1L << address)) != 0) {
+            entry |= BREAKPOINT;
+        }
+        return entry;
+    }
+
+    /** Drops the decoded entry for one address (called after the word is overwritten). */
+    public void invalidate(int address) {
+        if (address < entries.length) {
+            entries[address] = 0;
+        }
+    }
+
+    /**
+     * Decodes a raw 32-bit instruction into the packed format described above.
+     *
+     * @param instruction 32-bit machine instruction
+     * @return packed decoded instruction (always has the valid flag set)
+     */
+    public static long decode(int instruction) {
+        int opcode = (instruction >>> 22) & 0b111;
+        int regA = (instruction >>> 19) & 0b111;
+        int regB = (instruction >>> 16) & 0b111;
+        int immediate;
+
+        switch (opcode) {
+            case Decoder.ADD:
+            case Decoder.NAND:
+                // R-type: keep destReg (bits 2–0)
+                immediate = instruction & 0b111;
+                break;
+
+            case Decoder.LW:
+            case Decoder.SW:
+            case Decoder.BEQ:
+                // I-type: sign-extend the 16-bit offset once, here
+                immediate = (short) (instruction & 0xFFFF);
+                break;
+
+            default:
+                // J-type and O-type do not use the low bits
+                immediate = 0;
+                break;
+        }
+
+        return VALID
+                | ((long) opcode << 38)
+                | ((long) regA << 35)
+                | ((long) regB << 32)
+                | (immediate & 0xFFFFFFFFL);
+    }
+
+    /** @return true if a breakpoint is set on the entry's address */
+    public static boolean isBreakpoint(long entry) { return (entry & BREAKPOINT) != 0; }
+
+    /** @return opcode field of a packed entry */
+    public static int opcode(long entry) { return (int) (entry >>> 38) & 0b111; }
+
+    /** @return regA (rs) field of a packed entry */
+    public static int regA(long entry) { return (int) (entry >>> 35) & 0b111; }
+
+    /** @return regB (rt / rd for JALR) field of a packed entry */
+    public static int regB(long entry) { return (int) (entry >>> 32) & 0b111; }
+
+    /** @return destReg (R-type) or sign-extended offset (I-type) of a packed entry */
+    public static int immediate(long entry) { return (int) entry; }
+}
@@ -0,0 +1,430 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The Profiler class is an execution profiler for the Machine: set it with
+ * Machine.setStepListener() and it prints a report when the machine halts.
+ *
+ * It counts, in primitive arrays indexed by PC:
+ *  - executions per opcode and per PC (hot PCs)
+ *  - taken / not taken per BEQ
+ *  - JALR calls and returns, as a flat call graph: calls, self and inclusive
+ *    instruction counts per function (a function is a JALR target), and
+ *    caller -> callee call counts
+ *
+ * A JALR is a return when it jumps to the return address of the innermost
+ * open call (kept on a shadow stack), and a call when it jumps anywhere else.
+ * The instructions before the first call belong to the entry function.
+ *
+ * PCs outside memory (reached by a JALR or BEQ to an out-of-range address,
+ * where the machine fetches NOOPs) share one "outside" bucket, which is also
+ * the function of a call to such an address.
+ *
+ * With symbols (see readSymbols, or the symbol file written by
+ * "java Assembler <asm> <obj> <sym>"), PCs are shown as label+offset.
+ * Like every StepListener, the profiler runs the Decoder interpreter one
+ * instruction at a time; an unprofiled run pays nothing for it.
+ */
+public class Profiler implements StepListener {
+    private static final String[] MNEMONICS = {"add", "nand", "lw", "sw", "beq", "jalr", "halt", "noop"};
+    private static final int OUTSIDE = Machine.MEMORY_SIZE;            // bucket for out-of-range PCs
+    private static final int SLOTS = Machine.MEMORY_SIZE + 1;
+
+    private final PrintStream out;      // report destination
+    private final int topCount;         // number of hot PCs in the report
+
+    // Counters, indexed by opcode or PC
+    private final long[] opcodeCounts = new long[8];
+    private final long[] pcCounts = new long[SLOTS];
+    private final int[] pcWords = new int[SLOTS];        // last word executed at each PC
+    private final long[] taken = new long[SLOTS];
+    private final long[] notTaken = new long[SLOTS];
+
+    // Call graph, indexed by function entry PC
+    private final long[] calls = new long[SLOTS];
+    private final long[] selfCounts = new long[SLOTS];
+    private final long[] inclusiveCounts = new long[SLOTS];
+    private final int[] activations = new int[SLOTS];    // open calls per function
+    private final boolean[] isFunction = new boolean[SLOTS];
+    private final EdgeTable edges = new EdgeTable();                   // caller -> callee call counts
+    private long returns;
+
+    // Shadow call stack (frame 0 is the entry function)
+    private int[] stackReturn = new int[64];
+    private int[] stackFunction = new int[64];
+    private long[] stackStart = new long[64];
+    private int depth;
+
+    private long executed;
+    private String[] symbolNames = new String[0];   // sorted by address
+    private int[] symbolAddresses = new int[0];
+
+    /**
+     * Constructor.
+     *
+     * @param out      Where the report is printed at halt
+     * @param topCount Number of hot PCs to list
+     */
+    public Profiler(PrintStream out, int topCount) {
+        this.out = out;
+        this.topCount = topCount;
+    }
+
+    /**
+     * Sets the symbols used to show PCs as labels.
+     *
+     * @param names     Label names
+     * @param addresses Address of each label
+     */
+    public void setSymbols(String[] names, int[] addresses) {
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(addresses[a], addresses[b]));
+        symbolNames = new String[order.length];
+        symbolAddresses = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            symbolNames[i] = names[order[i]];
+            symbolAddresses[i] = addresses[order[i]];
+        }
+    }
+
+    /**
+     * Sets the symbols of an assembled program.
+     *
+     * @param program Assembled program
+     */
+    public void setSymbols(AssemblyResult program) {
+        String[] names = new String[program.getLabelCount()];
+        int[] addresses = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = program.getLabel(i);
+            addresses[i] = program.getLabelAddress(i);
+        }
+        setSymbols(names, addresses);
+    }
+
+    /**
+     * Reads a symbol file: one "label address" pair per line.
+     *
+     * @param file Symbol file
+     * @throws IOException when the file cannot be read
+     * @throws IllegalArgumentException when a line is not a label and an address
+     */
+    public void readSymbols(Path file) throws IOException {
+        Map<String, Integer> symbols = Assembler.readSymbols(file);
+        String[] names = new String[symbols.size()];
+        int[] addresses = new int[names.length];
+        int i = 0;
+        for (Map.Entry<String, Integer> symbol : symbols.entrySet()) {
+            names[i] = symbol.getKey();
+            addresses[i] = symbol.getValue();
+            i++;
+        }
+        setSymbols(names, addresses);
+    }
+
+    @Override
+    public void started(Machine machine) {
+        int entry = slot(machine.getPc());
+        isFunction[entry] = true;
+        activations[entry] = 1;
+        stackFunction[0] = entry;
+        stackReturn[0] = -1;
+        stackStart[0] = executed;
+        depth = 1;
+    }
+
+    @Override
+    public void stepped(Machine machine, int pc, int instruction) {
+        int opcode = (instruction >>> 22) & 0b111;
+        executed++;
+        opcodeCounts[opcode]++;
+        pcCounts[slot(pc)]++;
+        pcWords[slot(pc)] = instruction;
+        selfCounts[stackFunction[depth - 1]]++;
+
+        if (opcode == Decoder.BEQ) {
+            // BEQ writes no register, so the comparison can be redone afterwards
+            int[] registers = machine.getRegisters();
+            if (registers[(instruction >>> 19) & 0b111] == registers[(instruction >>> 16) & 0b111]) {
+                taken[pc]++;
+            } else {
+                notTaken[pc]++;
+            }
+        } else if (opcode == Decoder.JALR) {
+            int target = machine.getPc();
+            if (depth > 1 && target == stackReturn[depth - 1]) {
+                returns++;
+                returnFrom();
+            } else if (target != (pc + 1) % Machine.MEMORY_SIZE) {
+                callTo(slot(target), (pc + 1) % Machine.MEMORY_SIZE);
+            }
+        }
+    }
+
+    @Override
+    public void halted(Machine machine) {
+        // Close the calls that never returned
+        while (depth > 0) {
+            returnFrom();
+        }
+        report();
+    }
+
+    /** @return the counter index of a PC: the PC itself, or OUTSIDE */
+    private static int slot(int pc) {
+        return pc >= 0 && pc < Machine.MEMORY_SIZE ? pc : OUTSIDE;
+    }
+
+    /** Opens a call frame for a JALR to target (a slot). */
+    private void callTo(int target, int returnAddress) {
+        int caller = stackFunction[depth - 1];
+        calls[target]++;
+        isFunction[target] = true;
+        countEdge(caller, target);
+
+        if (depth == stackReturn.length) {
+            stackReturn = Arrays.copyOf(stackReturn, depth * 2);
+            stackFunction = Arrays.copyOf(stackFunction, depth * 2);
+            stackStart = Arrays.copyOf(stackStart, depth * 2);
+        }
+        stackReturn[depth] = returnAddress;
+        stackFunction[depth] = target;
+        stackStart[depth] = executed;
+        activations[target]++;
+        depth++;
+    }
+
+    /** Closes the innermost call frame. */
+    private void returnFrom() {
+        depth--;
+        int function = stackFunction[depth];
+        // Recursive calls are only counted once, by their outermost activation
+        if (--activations[function] == 0) {
+            inclusiveCounts[function] += executed - stackStart[depth];
+        }
+    }
+
+    /** Counts one call on the caller -> callee edge. */
+    private void countEdge(int caller, int callee) {
+        edges.increment((long) caller << 32 | callee);
+    }
+
+    /** Prints the report. */
+    private void report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Profile: ").append(executed).append(" instructions executed\n");
+
+        // Opcode mix
+        sb.append("\nOpcodes:\n");
+        for (int opcode = 0; opcode < 8; opcode++) {
+            if (opcodeCounts[opcode] > 0) {
+                sb.append(String.format("  %-5s %14d  %6.2f%%%n",
+                        MNEMONICS[opcode], opcodeCounts[opcode], percent(opcodeCounts[opcode])));
+            }
+        }
+
+        // Hot PCs
+        int[] hot = sortedByCount(pcCounts);
+        int shown = Math.min(topCount, hot.length);
+        sb.append("\nHot PCs (top ").append(shown).append(" of ").append(hot.length).append("):\n");
+        sb.append(String.format("  %6s %14s %8s  %-20s %s%n", "pc", "count", "%", "instruction", "location"));
+        for (int i = 0; i < shown; i++) {
+            int pc = hot[i];
+            sb.append(String.format("  %6s %14d %7.2f%%  %-20s %s%n",
+                    pc == OUTSIDE ? "-" : String.valueOf(pc), pcCounts[pc], percent(pcCounts[pc]), disassemble(pcWords[pc]), location(pc)));
+        }
+
+        // Branches
+        boolean header = false;
+        for (int pc = 0; pc < Machine.MEMORY_SIZE; pc++) {
+            long total = taken[pc] + notTaken[pc];
+            if (total == 0) {
+                continue;
+            }
+            if (!header) {
+                sb.append("\nBEQ branches:\n");
+                sb.append(String.format("  %6s %14s %14s %8s  %s%n", "pc", "taken", "not taken", "taken%", "location"));
+                header = true;
+            }
+            sb.append(String.format("  %6d %14d %14d %7.2f%%  %s%n",
+                    pc, taken[pc], notTaken[pc], 100.0 * taken[pc] / total, location(pc)));
+        }
+
+        // Flat call graph
+        long totalCalls = 0;
+        for (long count : calls) {
+            totalCalls += count;
+        }
+        sb.append("\nCall graph: ").append(totalCalls).append(" calls, ").append(returns).append(" returns\n");
+        sb.append(String.format("  %-20s %10s %14s %8s %14s %8s%n",
+                "function", "calls", "self", "self%", "inclusive", "incl%"));
+        int[] functions = sortedByCount(selfCounts);
+        for (int function : functions) {
+            if (!isFunction[function]) {
+                continue;
+            }
+            sb.append(String.format("  %-20s %10d %14d %7.2f%% %14d %7.2f%%%n",
+                    location(function), calls[function], selfCounts[function], percent(selfCounts[function]),
+                    inclusiveCounts[function], percent(inclusiveCounts[function])));
+        }
+        if (edges.size() > 0) {
+            sb.append("\n  caller -> callee: calls\n");
+            long[] keys = edges.keys();
+            long[] counts = edges.counts();
+            // Most calls first; ties stay in order of the first call
+            for (int edge : sortedByCount(counts)) {
+                sb.append("  ").append(location((int) (keys[edge] >>> 32))).append(" -> ")
+                  .append(location((int) keys[edge])).append(": ").append(counts[edge]).append('\n');
+            }
+        }
+
+        out.print(sb);
+        out.flush();
+    }
+
+    /** @return indices of the non-zero counts, highest count first */
+    private static int[] sortedByCount(long[] counts) {
+        int nonZero = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                nonZero++;
+            }
+        }
+        // Sort (count, index) pairs packed as count descending, index ascending
+        long[][] pairs = new long[nonZero][];
+        int n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                pairs[n++] = new long[] {counts[i], i};
+            }
+        }
+        Arrays.sort(pairs, (a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(a[1], b[1]));
+        int[] order = new int[nonZero];
+        for (int i = 0; i < nonZero; i++) {
+            order[i] = (int) pairs[i][1];
+        }
+        return order;
+    }
+
+    private double percent(long count) {
+        return executed == 0 ? 0 : 100.0 * count / executed;
+    }
+
+    /** @return the PC as label, label+offset (nearest label below), or the plain number */
+    private String location(int pc) {
+        if (pc == OUTSIDE) {
+            return "outside";
+        }
+        int low = 0;
+        int high = symbolAddresses.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (symbolAddresses[mid] <= pc) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (found < 0) {
+            return String.valueOf(pc);
+        }
+        int offset = pc - symbolAddresses[found];
+        return offset == 0 ? symbolNames[found] : symbolNames[found] + "+" + offset;
+    }
+
+    /** @return the instruction in assembly syntax */
+    private static String disassemble(int word) {
+        int opcode = (word >>> 22) & 0b111;
+        int regA = (word >>> 19) & 0b111;
+        int regB = (word >>> 16) & 0b111;
+        switch (opcode) {
+            case Decoder.ADD:
+            case Decoder.NAND:
+                return MNEMONICS[opcode] + " " + regA + " " + regB + " " + (word & 0b111);
+            case Decoder.LW:
+            case Decoder.SW:
+            case Decoder.BEQ:
+                return MNEMONICS[opcode] + " " + regA + " " + regB + " " + (short) (word & 0xFFFF);
+            case Decoder.JALR:
+                return MNEMONICS[opcode] + " " + regA + " " + regB;
+            default:
+                return MNEMONICS[opcode];
+        }
+    }
+
+    /**
+     * Open-addressing table of call counts keyed by (long) caller << 32 | callee.
+     * Edges are kept in order of their first call.
+     */
+    private static final class EdgeTable {
+        private long[] slotKeys = new long[64];
+        private int[] slotEntries = new int[64];      // entry index + 1 (0 = free slot)
+        private long[] keys = new long[32];
+        private long[] counts = new long[32];
+        private int size;
+
+        /** Adds one to the count of the key, adding the key if it is new */
+        void increment(long key) {
+            int mask = slotKeys.length - 1;
+            int slot = hash(key) & mask;
+            for (; slotEntries[slot] != 0; slot = (slot + 1) & mask) {
+                if (slotKeys[slot] == key) {
+                    counts[slotEntries[slot] - 1]++;
+                    return;
+                }
+            }
+
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            keys[size] = key;
+            counts[size] = 1;
+            size++;
+            slotKeys[slot] = key;
+            slotEntries[slot] = size;
+
+            // Keep the table at most half full
+            if (size * 2 > slotKeys.length) {
+                rehash(slotKeys.length * 2);
+            }
+        }
+
+        private void rehash(int capacity) {
+            slotKeys = new long[capacity];
+            slotEntries = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hash(keys[i]) & mask;
+                while (slotEntries[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slotKeys[slot] = keys[i];
+                slotEntries[slot] = i + 1;
+            }
+        }
+
+        /** Mixes caller and callee so consecutive PCs spread over the table */
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ h >>> 32);
+        }
+
+        /** @return number of edges */
+        int size() { return size; }
+
+        /** @return edge keys in order of first call */
+        long[] keys() { return Arrays.copyOf(keys, size); }
+
+        /** @return call count of each edge, in the same order as keys() */
+        long[] counts() { return Arrays.copyOf(counts, size); }
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The ProgramRunner class assembles and runs an LC-2K program in memory.
+ *
+ * The assembled words go straight from AssemblerCore into the Machine's memory:
+ * no .obj file, no text formatting or parsing, no printed states, and no
+ * System.exit. Runtime error messages are captured in the RunResult.
+ *
+ * A ProgramRunner only holds settings; every run uses a new Machine (and engine),
+ * so one runner can be used from several threads.
+ */
+public class ProgramRunner {
+    private static final OutputStream DISCARD = OutputStream.nullOutputStream();
+
+    private AssemblerCore assembler = new AssemblerCore();
+    private String engineName = "interpreter";
+    private boolean fastForward;
+    private long instructionLimit;
+    private long timeLimitMillis;
+    private boolean repeatDetection;
+
+    /**
+     * Selects the strict (default) or lenient assembler rules.
+     *
+     * @param lenient true for MiniAssembler rules
+     */
+    public void setLenientAssembly(boolean lenient) { assembler = new AssemblerCore(lenient); }
+
+    /**
+     * Selects the execution engine by name.
+     *
+     * @param name interpreter (default), threaded, fused or jit
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public void setEngine(String name) {
+        Simulator.newEngine(name);
+        engineName = name;
+    }
+
+    /** Enables loop fast-forward in the interpreter (see LoopAccelerator). */
+    public void setLoopFastForward(boolean enabled) { fastForward = enabled; }
+
+    /**
+     * Limits every run (see Machine.setInstructionLimit and setTimeLimit).
+     *
+     * @param instructions Maximum number of instructions (0 = no limit)
+     * @param millis       Maximum run time in milliseconds (0 = no limit)
+     */
+    public void setLimits(long instructions, long millis) {
+        instructionLimit = instructions;
+        timeLimitMillis = millis;
+    }
+
+    /** Stops programs caught repeating a state exactly (see Machine.setRepeatDetection). */
+    public void setRepeatDetection(boolean enabled) { repeatDetection = enabled; }
+
+    /**
+     * Assembles a program and runs it until it halts (or a limit stops it).
+     *
+     * @param source Assembly language program
+     * @return the assembly result and final machine state
+     * @throws IllegalArgumentException if the program does not fit in memory
+     */
+    public RunResult run(String source) {
+        AssemblyResult assembly = assembler.assemble(source);
+        if (!assembly.isSuccess()) {
+            return new RunResult(assembly, null, "");
+        }
+        if (assembly.getWordCount() > Machine.MEMORY_SIZE) {
+            throw new IllegalArgumentException("Program does not fit in memory (" + Machine.MEMORY_SIZE + " words)");
+        }
+
+        Machine machine = new Machine();
+        machine.setInstructionCount(assembly.copyTo(machine.getMemory()));
+        return new RunResult(assembly, machine, execute(machine));
+    }
+
+    /**
+     * Runs a loaded machine quietly, capturing its error messages.
+     *
+     * @param machine Machine with a program in memory
+     * @return error output
+     */
+    private String execute(Machine machine) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        machine.setOutput(new PrintStream(DISCARD), new PrintStream(errors, true, StandardCharsets.UTF_8));
+        machine.setPrintInterval(0);
+        machine.setPrintFinalState(false);
+        machine.setEngine(Simulator.newEngine(engineName));
+        machine.setLoopFastForward(fastForward);
+        machine.setInstructionLimit(instructionLimit);
+        machine.setTimeLimit(timeLimitMillis);
+        machine.setRepeatDetection(repeatDetection);
+        machine.simulate();
+        return errors.toString(StandardCharsets.UTF_8);
+    }
+}
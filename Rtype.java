@@ -1,16 +1,15 @@
 public class Rtype {
     // Singleton instance: only one instance of this class should exist.
     // This ensures all R-type operations share the same object in memory.
-    private static Rtype instance;
+    // Created eagerly when the class is initialized, so getInstance() is thread-safe
+    // (the object is stateless and shared by every Machine).
+    private static final Rtype INSTANCE = new Rtype();
 
     private Rtype() {
     }
 
     public static Rtype getInstance() {
-        if (instance == null) {
-            instance = new Rtype();
-        }
-        return instance;
+        return INSTANCE;
     }
 
     /**
@@ -43,8 +42,8 @@ public class Rtype {
 
             default:
                 // Invalid opcode: print error message and stop the machine.
-                System.err.println("Unknown R-type opcode: " + opcode);
-                machine.halt();
+                machine.getErr().println("Unknown R-type opcode: " + opcode);
+                machine.halt(HaltReason.INVALID_OPCODE);
                 break;
         }
     }
@@ -0,0 +1,58 @@
+/**
+ * The RunResult class is the outcome of ProgramRunner.run: the assembly result
+ * and, if the program assembled, the final state of the Machine it ran on.
+ *
+ * The state getters return the Machine's own arrays (no copies).
+ */
+public final class RunResult {
+    private final AssemblyResult assembly;
+    private final Machine machine;     // null if the program did not assemble
+    private final String errorOutput;  // runtime error messages
+
+    /**
+     * Constructor (used by ProgramRunner).
+     *
+     * @param assembly    Assembly result
+     * @param machine     Machine after the run (null if assembly failed)
+     * @param errorOutput Runtime error messages printed by the machine
+     */
+    RunResult(AssemblyResult assembly, Machine machine, String errorOutput) {
+        this.assembly = assembly;
+        this.machine = machine;
+        this.errorOutput = errorOutput;
+    }
+
+    /** @return the assembly result (its diagnostics explain why nothing ran) */
+    public AssemblyResult getAssembly() { return assembly; }
+
+    /** @return true if the program assembled and was run */
+    public boolean hasRun() { return machine != null; }
+
+    /** @return the Machine after the run */
+    public Machine getMachine() { return ranMachine(); }
+
+    /** @return final register file */
+    public int[] getRegisters() { return ranMachine().getRegisters(); }
+
+    /** @return final memory */
+    public Memory getMemory() { return ranMachine().getMemory(); }
+
+    /** @return final program counter */
+    public int getPc() { return ranMachine().getPc(); }
+
+    /** @return number of executed instructions */
+    public long getExecuted() { return ranMachine().getExecuted(); }
+
+    /** @return why the machine stopped */
+    public HaltReason getHaltReason() { return ranMachine().getHaltReason(); }
+
+    /** @return runtime error messages (e.g. "Invalid memory access at ..."), empty if none */
+    public String getErrorOutput() { return errorOutput; }
+
+    private Machine ranMachine() {
+        if (machine == null) {
+            throw new IllegalStateException("program did not assemble: " + assembly.getFirstError());
+        }
+        return machine;
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The SimulationMetrics class publishes live statistics of a running Machine
+ * (set with Machine.setMetrics) to other threads: a JMX MBean and/or a small
+ * HTTP endpoint on localhost.
+ *
+ * The simulation thread never takes a lock and never calls into JMX or HTTP:
+ * between bursts of PUBLISH_INTERVAL instructions the Machine calls publish(),
+ * which stores a few numbers with release writes. Readers load them with
+ * acquire reads. Every value lives in its own 64-byte slot of a long array,
+ * so readers polling one value never share a cache line with another one.
+ *
+ * The opcode mix is sampled: publish() counts the opcode of the instruction
+ * at the PC whenever the executed count is a multiple of PUBLISH_INTERVAL
+ * (the Machine ends a burst at every multiple, however the bursts in between
+ * are cut by limits, checkpoints or printed states). The interval is prime,
+ * so loops of any shorter length are sampled at every one of their
+ * instructions.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+    /** Instructions between two publications (a prime, see the class comment) */
+    public static final int PUBLISH_INTERVAL = 65521;
+
+    private static final String[] MNEMONICS = {"add", "nand", "lw", "sw", "beq", "jalr", "halt", "noop"};
+    private static final long MIPS_WINDOW_NANOS = 100_000_000L;   // recent MIPS is measured over >= 100 ms
+
+    // One value per 64-byte slot (8 longs); slot 0 is left empty as padding
+    private static final int SLOT = 8;
+    private static final int EXECUTED = SLOT;
+    private static final int PC = 2 * SLOT;
+    private static final int NANOS = 3 * SLOT;        // time of the last publication
+    private static final int MIPS = 4 * SLOT;         // double bits
+    private static final int HALTED = 5 * SLOT;
+    private static final int OPCODES = 6 * SLOT;      // 8 slots, one per opcode
+    private static final int SLOTS = OPCODES + 9 * SLOT;
+
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] cells = new long[SLOTS];
+    private final long startNanos;
+
+    // Only touched by the simulation thread
+    private long windowNanos;
+    private long windowExecuted;
+    private long lastSampled = -1;  // executed count of the last opcode sample
+
+    /** Constructor: the simulation starts now */
+    public SimulationMetrics() {
+        startNanos = System.nanoTime();
+        windowNanos = startNanos;
+        CELLS.setRelease(cells, NANOS, startNanos);
+    }
+
+    /**
+     * Publishes the machine's progress (called by the simulation thread).
+     *
+     * @param executed Number of executed instructions
+     * @param pc       Program counter
+     * @param opcode   Opcode of the instruction at pc (sampled into the opcode mix
+     *                 when executed is a multiple of PUBLISH_INTERVAL)
+     * @param halted   Whether the machine has halted
+     */
+    public void publish(long executed, int pc, int opcode, boolean halted) {
+        long now = System.nanoTime();
+        if (now - windowNanos >= MIPS_WINDOW_NANOS || halted) {
+            if (now > windowNanos) {
+                double mips = (executed - windowExecuted) * 1e3 / (now - windowNanos);
+                CELLS.setRelease(cells, MIPS, Double.doubleToRawLongBits(mips));
+            }
+            windowNanos = now;
+            windowExecuted = executed;
+        }
+        if (!halted && executed % PUBLISH_INTERVAL == 0 && executed != lastSampled) {
+            lastSampled = executed;
+            int slot = OPCODES + opcode * SLOT;
+            CELLS.setRelease(cells, slot, (long) CELLS.getOpaque(cells, slot) + 1);
+        }
+        CELLS.setRelease(cells, PC, (long) pc);
+        CELLS.setRelease(cells, NANOS, now);
+        CELLS.setRelease(cells, HALTED, halted ? 1L : 0L);
+        // Written last: a reader that sees this count sees the values above
+        CELLS.setRelease(cells, EXECUTED, executed);
+    }
+
+    @Override
+    public long getExecuted() { return (long) CELLS.getAcquire(cells, EXECUTED); }
+
+    @Override
+    public int getPc() { return (int) (long) CELLS.getAcquire(cells, PC); }
+
+    @Override
+    public double getMips() { return Double.longBitsToDouble((long) CELLS.getAcquire(cells, MIPS)); }
+
+    @Override
+    public double getAverageMips() {
+        long executed = getExecuted();
+        long nanos = (long) CELLS.getAcquire(cells, NANOS) - startNanos;
+        return nanos <= 0 ? 0 : executed * 1e3 / nanos;
+    }
+
+    @Override
+    public double getElapsedSeconds() { return (System.nanoTime() - startNanos) / 1e9; }
+
+    @Override
+    public boolean isHalted() { return (long) CELLS.getAcquire(cells, HALTED) != 0; }
+
+    @Override
+    public String getOpcodeMix() {
+        long[] samples = getOpcodeSamples();
+        long total = 0;
+        for (long count : samples) {
+            total += count;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int opcode = 0; opcode < samples.length; opcode++) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            double share = total == 0 ? 0 : 100.0 * samples[opcode] / total;
+            sb.append(MNEMONICS[opcode]).append('=').append(String.format("%.1f%%", share));
+        }
+        return sb.toString();
+    }
+
+    /** @return number of samples per opcode (ADD..NOOP) */
+    public long[] getOpcodeSamples() {
+        long[] samples = new long[8];
+        for (int opcode = 0; opcode < 8; opcode++) {
+            samples[opcode] = (long) CELLS.getAcquire(cells, OPCODES + opcode * SLOT);
+        }
+        return samples;
+    }
+
+    /**
+     * Registers this object with the platform MBean server as "lc2k:type=Simulation".
+     *
+     * @throws JMException when registration fails (e.g. the name is taken)
+     */
+    public void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("lc2k:type=Simulation"));
+    }
+
+    /**
+     * Serves the metrics as plain text on http://localhost:port/metrics, from a
+     * daemon thread (so it never keeps the JVM alive).
+     *
+     * @param port TCP port (0 = any free port)
+     * @return the started server
+     * @throws IOException when the port cannot be bound
+     */
+    public HttpServer startHttpServer(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(command -> {
+            Thread thread = new Thread(command, "lc2k-metrics");
+            thread.setDaemon(true);
+            thread.start();
+        });
+        server.start();
+        return server;
+    }
+
+    /** Answers one HTTP request with the current values, one "name value" per line. */
+    private void handle(HttpExchange exchange) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("lc2k_executed ").append(getExecuted()).append('\n')
+          .append("lc2k_pc ").append(getPc()).append('\n')
+          .append("lc2k_mips ").append(getMips()).append('\n')
+          .append("lc2k_average_mips ").append(getAverageMips()).append('\n')
+          .append("lc2k_elapsed_seconds ").append(getElapsedSeconds()).append('\n')
+          .append("lc2k_halted ").append(isHalted() ? 1 : 0).append('\n');
+        long[] samples = getOpcodeSamples();
+        for (int opcode = 0; opcode < samples.length; opcode++) {
+            sb.append("lc2k_opcode_samples{opcode=\"").append(MNEMONICS[opcode]).append("\"} ")
+              .append(samples[opcode]).append('\n');
+        }
+
+        byte[] body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
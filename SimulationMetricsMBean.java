@@ -0,0 +1,28 @@
+/**
+ * The SimulationMetricsMBean interface is the JMX view of a running
+ * simulation (see SimulationMetrics). Every attribute is a snapshot taken at
+ * the end of the last instruction burst.
+ */
+public interface SimulationMetricsMBean {
+
+    /** @return number of executed instructions */
+    long getExecuted();
+
+    /** @return program counter */
+    int getPc();
+
+    /** @return million instructions per second over the last measuring window */
+    double getMips();
+
+    /** @return million instructions per second since the simulation started */
+    double getAverageMips();
+
+    /** @return seconds since the simulation started */
+    double getElapsedSeconds();
+
+    /** @return true once the machine has halted */
+    boolean isHalted();
+
+    /** @return sampled opcode mix, e.g. "add=41.2% lw=20.1% ..." */
+    String getOpcodeMix();
+}
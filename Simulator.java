@@ -1,7 +1,10 @@
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.util.List;
+import java.nio.file.Paths;
+
+import javax.management.JMException;
 
 
 /**
@@ -13,21 +16,148 @@ import java.util.List;
  */
 public class Simulator {
     
+    private static final String USAGE =
+            "Usage: java Simulator [--quiet | --final-only | --every N] [--engine interpreter|threaded|fused|jit|pipeline]"
+            + " [--fusion-stats] [--pipeline-trace <file>] [--fast-forward] [--profile [--profile-top N] [--symbols <file>]]"
+            + " [--jmx] [--metrics-port P] [--max-instructions N] [--time-limit MS] [--detect-loops]"
+            + " [--checkpoint <file> [--checkpoint-every N]] [--resume] [--cache <spec>]"
+            + " [--delta-trace <file> | --binary-trace <file> [--snapshot-every K]] <machine_code_file | checkpoint_file>";
+
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 1024;
+    private static final int DEFAULT_PROFILE_TOP = 10;
+    private static final long DEFAULT_CHECKPOINT_INTERVAL = 100_000_000L;
+
      /**
      * Program entry point.
      * Reads the input .obj file, loads machine code into memory,
      * and starts the simulation.
      *
-     * @param args Command-line arguments (expects one filename argument)
+     * Run modes (default prints the state before every instruction):
+     *  --quiet       print nothing
+     *  --final-only  print only the final halted state
+     *  --every N     print the state before every N-th instruction, plus the final state
+     *
+     *  --engine threaded      run with the ThreadedEngine instead of the Decoder interpreter
+     *  --engine fused         ThreadedEngine with superinstruction fusion
+     *                         (--fusion-stats reports the fusion hit rate on stderr)
+     *  --fast-forward         fast-forward simple loops in the interpreter (see LoopAccelerator)
+     *  --engine jit           run with the JitEngine (hot blocks compiled to JVM bytecode)
+     *  --engine pipeline      run on the 5-stage PipelineEngine and report cycles and CPI on stderr
+     *                         (--pipeline-trace <file> writes the pipeline registers of every cycle)
+     *  --delta-trace <file>   also record a delta-encoded text trace (see DeltaTraceWriter)
+     *  --binary-trace <file>  also record a binary trace (see BinaryTraceWriter),
+     *                         with a full snapshot every K steps (--snapshot-every K)
+     *  --profile              print an execution profile on stderr at halt (see Profiler):
+     *                         the N hottest PCs (--profile-top N), branches and call graph,
+     *                         with labels from a symbol file (--symbols <file>)
+     *  --jmx                  publish live statistics (MIPS, executed, PC, opcode mix)
+     *                         as the MBean lc2k:type=Simulation (see SimulationMetrics)
+     *  --metrics-port P       serve the same statistics on http://localhost:P/metrics
+     *  --max-instructions N   stop after N instructions
+     *  --time-limit MS        stop after MS milliseconds of simulation
+     *  --detect-loops         stop as soon as the machine repeats a state exactly
+     *                         (the watchdog reports why it stopped on stderr and
+     *                         the final state is printed as usual)
+     *  --checkpoint <file>    save the machine state to <file> every N instructions
+     *                         (--checkpoint-every N, default 100 million; see Checkpointer)
+     *  --resume               the file argument is a checkpoint: continue the run it saved
+     *  --cache <spec>         simulate an L1 cache and report hits, misses and AMAT on stderr,
+     *                         e.g. "unified,size=512,block=8,ways=4,policy=fifo,write=through,hit=1,miss=50"
+     *                         (see CacheSimulator; interpreter only)
+     *
+     * @param args Command-line arguments (optional run mode, then one filename argument)
      */
     public static void main(String[] args) {
-        // Check if a file argument is provided                          
-        if (args.length != 1) {                             
-            System.err.println("Usage: java Simulator <machine_code_file>");
+        int printInterval = 1;       // print before every instruction
+        boolean printFinal = true;   // print the final state
+        ExecutionEngine engine = null;   // Decoder interpreter
+        boolean fusionStats = false;
+        String pipelineTraceFile = null;
+        boolean fastForward = false;
+        String deltaTraceFile = null;
+        String binaryTraceFile = null;
+        int snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+        boolean profile = false;
+        int profileTop = DEFAULT_PROFILE_TOP;
+        String symbolFile = null;
+        boolean jmx = false;
+        int metricsPort = -1;
+        long instructionLimit = 0;
+        long timeLimit = 0;
+        boolean detectLoops = false;
+        String checkpointFile = null;
+        long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        boolean resume = false;
+        CacheSimulator cache = null;
+        int argIndex = 0;
+
+        // Parse run mode options
+        while (argIndex < args.length && args[argIndex].startsWith("--")) {
+            String option = args[argIndex++];
+            if (option.equals("--quiet")) {
+                printInterval = 0;
+                printFinal = false;
+            } else if (option.equals("--final-only")) {
+                printInterval = 0;
+            } else if (option.equals("--every") && argIndex < args.length) {
+                printInterval = parsePositive(option, args[argIndex++]);
+            } else if (option.equals("--engine") && argIndex < args.length) {
+                engine = createEngine(args[argIndex++]);
+            } else if (option.equals("--fast-forward")) {
+                fastForward = true;
+            } else if (option.equals("--fusion-stats")) {
+                fusionStats = true;
+            } else if (option.equals("--pipeline-trace") && argIndex < args.length) {
+                pipelineTraceFile = args[argIndex++];
+            } else if (option.equals("--delta-trace") && argIndex < args.length) {
+                deltaTraceFile = args[argIndex++];
+            } else if (option.equals("--binary-trace") && argIndex < args.length) {
+                binaryTraceFile = args[argIndex++];
+            } else if (option.equals("--snapshot-every") && argIndex < args.length) {
+                snapshotInterval = parsePositive(option, args[argIndex++]);
+            } else if (option.equals("--profile")) {
+                profile = true;
+            } else if (option.equals("--profile-top") && argIndex < args.length) {
+                profileTop = parsePositive(option, args[argIndex++]);
+            } else if (option.equals("--symbols") && argIndex < args.length) {
+                symbolFile = args[argIndex++];
+            } else if (option.equals("--jmx")) {
+                jmx = true;
+            } else if (option.equals("--metrics-port") && argIndex < args.length) {
+                metricsPort = parsePositive(option, args[argIndex++]);
+            } else if (option.equals("--max-instructions") && argIndex < args.length) {
+                instructionLimit = parsePositiveLong(option, args[argIndex++]);
+            } else if (option.equals("--time-limit") && argIndex < args.length) {
+                timeLimit = parsePositiveLong(option, args[argIndex++]);
+            } else if (option.equals("--detect-loops")) {
+                detectLoops = true;
+            } else if (option.equals("--checkpoint") && argIndex < args.length) {
+                checkpointFile = args[argIndex++];
+            } else if (option.equals("--checkpoint-every") && argIndex < args.length) {
+                checkpointInterval = parsePositiveLong(option, args[argIndex++]);
+            } else if (option.equals("--resume")) {
+                resume = true;
+            } else if (option.equals("--cache") && argIndex < args.length) {
+                try {
+                    cache = CacheSimulator.parse(args[argIndex++]);
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    System.exit(1);
+                }
+            } else {
+                System.err.println(USAGE);
+                System.exit(1);
+            }
+        }
+
+        // Check if a file argument is provided (and at most one trace or profile is requested)
+        int listeners = (deltaTraceFile != null ? 1 : 0) + (binaryTraceFile != null ? 1 : 0) + (profile ? 1 : 0);
+        if (args.length - argIndex != 1 || listeners > 1) {
+            System.err.println(USAGE);
             System.exit(1);
         }
 
-        String filename = args[0];
+        String filename = args[argIndex];
         File inputFile = new File(filename);
         
         // Verify that the file exists
@@ -39,31 +169,238 @@ public class Simulator {
 
         // Create a Machine object (represents CPU + Memory)
         Machine machine = new Machine();
-        int[] memory = machine.getMemory();
-        int pc = 0;    // program counter for loading memory
 
-        // Load machine code from file into memory line by line
+        // Load machine code from file into memory (text .obj or binary object file),
+        // or the saved state of an earlier run
         try {
-            List<String> lines = Files.readAllLines(inputFile.toPath());
-            for (String line : lines) {
-                try {
-                    // Each line should contain one integer instruction
-                    memory[pc++] = Integer.parseInt(line.trim());
-                } catch (NumberFormatException e) {
-                    System.err.println("Invalid machine code at line " + (pc + 1));
-                    System.exit(1);
-                }
+            if (resume) {
+                machine.restore(MachineCheckpoint.read(inputFile.toPath()));
+            } else {
+                int count = ObjectLoader.load(inputFile.toPath(), machine.getMemory());
+                // Save the number of loaded instructions into the machine
+                machine.setInstructionCount(count);
             }
-            // Save the number of loaded instructions into the machine
-            machine.setInstructionCount(pc);
         } catch (IOException e) {
             System.err.println("Error reading file: " + e.getMessage());
             System.exit(1);
+        } catch (IllegalArgumentException e) {
+            // Invalid machine code at line N
+            System.err.println(e.getMessage());
+            System.exit(1);
         }
 
         // Start simulating the machine
+        machine.setPrintInterval(printInterval);
+        machine.setPrintFinalState(printFinal);
+        machine.setEngine(engine);
+        machine.setLoopFastForward(fastForward);
+        machine.setInstructionLimit(instructionLimit);
+        machine.setTimeLimit(timeLimit);
+        machine.setRepeatDetection(detectLoops);
+
+        // Optional state trace
+        Closeable trace = null;
+        try {
+            if (deltaTraceFile != null) {
+                DeltaTraceWriter writer = new DeltaTraceWriter(new FileWriter(deltaTraceFile));
+                machine.setStepListener(writer);
+                trace = writer;
+            } else if (binaryTraceFile != null) {
+                BinaryTraceWriter writer = new BinaryTraceWriter(Paths.get(binaryTraceFile), snapshotInterval);
+                machine.setStepListener(writer);
+                trace = writer;
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing trace: " + e.getMessage());
+            System.exit(1);
+        }
+
+        // Optional cycle-by-cycle pipeline trace
+        Closeable pipelineTrace = null;
+        if (pipelineTraceFile != null) {
+            if (!(engine instanceof PipelineEngine)) {
+                System.err.println("Error: --pipeline-trace requires --engine pipeline.");
+                System.exit(1);
+            }
+            try {
+                FileWriter writer = new FileWriter(pipelineTraceFile);
+                ((PipelineEngine) engine).setTrace(writer);
+                pipelineTrace = writer;
+            } catch (IOException e) {
+                System.err.println("Error writing trace: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        // Optional profile, reported on stderr when the machine halts
+        if (profile) {
+            Profiler profiler = new Profiler(System.err, profileTop);
+            if (symbolFile != null) {
+                try {
+                    profiler.readSymbols(Paths.get(symbolFile));
+                } catch (IOException e) {
+                    System.err.println("Error reading symbols: " + e.getMessage());
+                    System.exit(1);
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    System.exit(1);
+                }
+            }
+            machine.setStepListener(profiler);
+        }
+
+        // Optional live statistics
+        if (jmx || metricsPort > 0) {
+            SimulationMetrics metrics = new SimulationMetrics();
+            try {
+                if (jmx) {
+                    metrics.registerMBean();
+                }
+                if (metricsPort > 0) {
+                    metrics.startHttpServer(metricsPort);
+                }
+            } catch (IOException | JMException e) {
+                System.err.println("Error starting metrics: " + e.getMessage());
+                System.exit(1);
+            }
+            machine.setMetrics(metrics);
+        }
+
+        // Optional cache model, fed by the interpreter's fetches and LW/SW
+        if (cache != null) {
+            if (engine != null) {
+                System.err.println("Error: --cache requires the interpreter engine.");
+                System.exit(1);
+            }
+            machine.setCache(cache);
+        }
+
+        // Optional periodic checkpoints
+        Checkpointer checkpointer = null;
+        if (checkpointFile != null) {
+            checkpointer = new Checkpointer(Paths.get(checkpointFile), checkpointInterval);
+            machine.setCheckpointer(checkpointer);
+        }
+
         machine.simulate();
 
+        if (checkpointer != null) {
+            try {
+                checkpointer.finish();
+            } catch (IOException e) {
+                System.err.println("Error writing checkpoint: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (fusionStats && engine instanceof ThreadedEngine) {
+            System.err.print(((ThreadedEngine) engine).getFusionReport());
+        }
+
+        if (cache != null) {
+            System.err.print(cache.getReport());
+        }
+
+        if (engine instanceof PipelineEngine) {
+            PipelineEngine pipeline = (PipelineEngine) engine;
+            System.err.print(pipeline.getReport());
+            if (pipelineTrace != null) {
+                try {
+                    pipeline.flushTrace();
+                    pipelineTrace.close();
+                } catch (IOException e) {
+                    System.err.println("Error writing trace: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+        }
+
+        if (trace != null) {
+            try {
+                trace.close();
+            } catch (IOException e) {
+                System.err.println("Error writing trace: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
         System.exit(0);
     }
+
+    /**
+     * Creates the execution engine named on the command line, or exits with an error.
+     *
+     * @param name Engine name
+     * @return the engine (null for the default Decoder interpreter)
+     */
+    static ExecutionEngine createEngine(String name) {
+        try {
+            return newEngine(name);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Creates an execution engine by name.
+     *
+     * @param name interpreter, threaded, fused, jit or pipeline
+     * @return the engine (null for the default Decoder interpreter)
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static ExecutionEngine newEngine(String name) {
+        switch (name) {
+            case "interpreter":
+                return null;
+            case "threaded":
+                return new ThreadedEngine();
+            case "fused":
+                return new ThreadedEngine(true);
+            case "jit":
+                return new JitEngine();
+            case "pipeline":
+                return new PipelineEngine();
+            default:
+                throw new IllegalArgumentException("Error: unknown engine '" + name + "'.");
+        }
+    }
+
+    /**
+     * Parses the positive number that follows an option, or exits with an error.
+     *
+     * @param option Name of the option (for the error message)
+     * @param value  Text to parse
+     * @return the parsed number
+     */
+    static int parsePositive(String option, String value) {
+        long number = parsePositiveLong(option, value);
+        if (number > Integer.MAX_VALUE) {
+            System.err.println("Error: " + option + " expects a positive number.");
+            System.exit(1);
+        }
+        return (int) number;
+    }
+
+    /**
+     * Parses the positive (64-bit) number that follows an option, or exits with an error.
+     *
+     * @param option Name of the option (for the error message)
+     * @param value  Text to parse
+     * @return the parsed number
+     */
+    static long parsePositiveLong(String option, String value) {
+        long number = -1;
+        try {
+            number = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        if (number < 1) {
+            System.err.println("Error: " + option + " expects a positive number.");
+            System.exit(1);
+        }
+        return number;
+    }
 }
@@ -0,0 +1,148 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The SourceScan class keeps what AssemblerCore's scanner found on every source
+ * line: whether the line has code, its machine code word before label patching,
+ * the label it defines and the label it uses.
+ *
+ * A line's scan only depends on the line's text, so an incremental assembly
+ * (AssemblerCore.assemble(lines, previous)) can replay the scan of every
+ * unchanged line and only re-scan the lines that were edited. Label uses are
+ * always patched again, so instructions whose labels moved get new offsets.
+ */
+public final class SourceScan {
+    static final byte NO_CODE = 0;     // blank or comment line
+    static final byte CODE = 1;        // line assembled to one word
+    static final byte ERROR = 2;       // line with an encoding error (never replayed)
+
+    final long[] hashes;               // hash of each line's text
+    final byte[] kinds;
+    final int[] words;                 // word before label patching
+    final String[] labels;             // label defined on the line, or null
+    final byte[] fixupKinds;           // kind of label use, or -1
+    final String[] fixupLabels;        // label used by the line, or null
+
+    /** Constructor: an empty scan of lineCount lines */
+    SourceScan(int lineCount) {
+        hashes = new long[lineCount];
+        kinds = new byte[lineCount];
+        words = new int[lineCount];
+        labels = new String[lineCount];
+        fixupKinds = new byte[lineCount];
+        fixupLabels = new String[lineCount];
+    }
+
+    /** @return number of source lines */
+    public int getLineCount() { return hashes.length; }
+
+    /**
+     * Hashes one source line (64-bit FNV-1a over its characters).
+     *
+     * @param line Source line
+     * @return hash
+     */
+    static long hash(String line) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < line.length(); i++) {
+            hash = (hash ^ line.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Matches the lines of this (new) scan with a previous scan: lines of the
+     * common prefix and common suffix are unchanged, everything between them
+     * has to be scanned again.
+     *
+     * @param previous Scan of the earlier version of the source
+     * @return for every line, the index of the same line in previous, or -1
+     */
+    int[] align(SourceScan previous) {
+        int count = hashes.length;
+        int oldCount = previous.hashes.length;
+        int[] reuse = new int[count];
+        Arrays.fill(reuse, -1);
+
+        int prefix = 0;
+        while (prefix < count && prefix < oldCount && hashes[prefix] == previous.hashes[prefix]) {
+            reuse[prefix] = prefix;
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < count - prefix && suffix < oldCount - prefix
+                && hashes[count - 1 - suffix] == previous.hashes[oldCount - 1 - suffix]) {
+            reuse[count - 1 - suffix] = oldCount - 1 - suffix;
+            suffix++;
+        }
+
+        // Lines that had errors are always scanned again
+        for (int i = 0; i < count; i++) {
+            if (reuse[i] >= 0 && previous.kinds[reuse[i]] == ERROR) {
+                reuse[i] = -1;
+            }
+        }
+        return reuse;
+    }
+
+    /**
+     * Writes the scan (see read for the format).
+     *
+     * @param out Destination
+     * @throws IOException when writing fails
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(hashes.length);
+        for (int i = 0; i < hashes.length; i++) {
+            out.writeLong(hashes[i]);
+            out.writeByte(kinds[i]);
+            out.writeInt(words[i]);
+            out.writeByte(fixupKinds[i]);
+            writeString(out, labels[i]);
+            writeString(out, fixupLabels[i]);
+        }
+    }
+
+    /**
+     * Reads a scan written by write: line count, then per line hash, kind, word,
+     * fixup kind, label and fixup label (strings as length + UTF-8, -1 for null).
+     *
+     * @param in Source, positioned at the scan
+     * @return the scan
+     */
+    static SourceScan read(ByteBuffer in) {
+        SourceScan scan = new SourceScan(in.getInt());
+        for (int i = 0; i < scan.hashes.length; i++) {
+            scan.hashes[i] = in.getLong();
+            scan.kinds[i] = in.get();
+            scan.words[i] = in.getInt();
+            scan.fixupKinds[i] = in.get();
+            scan.labels[i] = readString(in);
+            scan.fixupLabels[i] = readString(in);
+        }
+        return scan;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
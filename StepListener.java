@@ -0,0 +1,31 @@
+/**
+ * The StepListener interface lets tools observe a running Machine
+ * (state traces, etc.) without the Machine knowing about them.
+ * Set one with Machine.setStepListener(); when none is set, the
+ * simulation loop pays nothing for it.
+ */
+public interface StepListener {
+
+    /**
+     * Called once before the first instruction executes.
+     *
+     * @param machine The machine about to run
+     */
+    void started(Machine machine);
+
+    /**
+     * Called after every executed instruction.
+     *
+     * @param machine     The machine (already showing the new state)
+     * @param pc          PC of the instruction that just executed
+     * @param instruction The instruction word as it was fetched
+     */
+    void stepped(Machine machine, int pc, int instruction);
+
+    /**
+     * Called once after the machine halts.
+     *
+     * @param machine The halted machine
+     */
+    void halted(Machine machine);
+}
@@ -0,0 +1,567 @@
+/**
+ * The ThreadedEngine class runs a program as "threaded code".
+ *
+ * Instead of fetching, decoding and dispatching every instruction through the
+ * Decoder and the Rtype/Itype/Jtype/Otype singletons, each memory word is
+ * compiled once into a small handler object with its operands baked in as
+ * constants (e.g. "add r1,r2 -> r3", "beq r0,r2 -> 17"). The run loop then
+ * only calls one handler per instruction.
+ *
+ * Handlers are compiled lazily on first execution and dropped again when SW
+ * overwrites their word, so self-modifying code behaves exactly as in the
+ * interpreter.
+ *
+ * With fusion enabled, a peephole pass also recognizes common two-instruction
+ * idioms and compiles them into one superinstruction stored at the address of
+ * the first instruction:
+ *  - "nand 0 0 k" + "add"     (load -1, then decrement)
+ *  - "lw 0 k label" + "add"   (add a constant, e.g. stack pointer bump)
+ *  - "add" + "beq"            (counted loop step)
+ *  - "nand" + "nand"          (AND idiom)
+ * A fused pair counts as two executed instructions. The second instruction
+ * keeps its own handler, so a branch into the middle of a pair is exact.
+ */
+public class ThreadedEngine implements ExecutionEngine {
+    private static final int MEMORY_SIZE = Machine.MEMORY_SIZE;
+
+    // Names of the fused idioms, indexed by Fused.kind
+    private static final String[] FUSED_NAMES = {
+        "nand 0 0 k + add", "lw 0 k const + add", "add + beq", "nand + nand"
+    };
+
+    private final boolean fusion;   // compile superinstructions
+    private Machine machine;        // machine the compiled handlers belong to
+    private Handler[] slots;        // compiled handler per address (null = not compiled yet)
+    private boolean stopped;        // set by handlers that halt the machine
+    private boolean faulted;        // set when the stop was an invalid memory access
+
+    // Fusion statistics
+    private long totalExecuted;
+    private final long[] fusedExecuted = new long[FUSED_NAMES.length];
+
+    /** Constructor: plain threaded code (one handler per instruction) */
+    public ThreadedEngine() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param fusion true to compile common instruction pairs into superinstructions
+     */
+    public ThreadedEngine(boolean fusion) {
+        this.fusion = fusion;
+    }
+
+    @Override
+    public void run(Machine target, long maxSteps) {
+        if (machine != target) {
+            // Handlers bake in memory contents, so they belong to one machine
+            machine = target;
+            slots = new Handler[MEMORY_SIZE];
+        }
+
+        int[] reg = target.getRegisters();
+        Memory mem = target.getMemory();
+        Handler[] code = slots;
+        int pc = target.getPc();
+        long count = 0;
+        stopped = false;
+        faulted = false;
+
+        while (count < maxSteps) {
+            if (pc >= 0 && pc < MEMORY_SIZE) {
+                Handler handler = code[pc];
+                if (handler == null) {
+                    handler = compile(mem, pc);
+                    code[pc] = handler;
+                }
+                if (handler.size == 2) {
+                    Fused pair = (Fused) handler;
+                    if (maxSteps - count < 2) {
+                        // Only one step left in the budget: run the first instruction alone
+                        handler = pair.single;
+                    } else {
+                        fusedExecuted[pair.kind]++;
+                        count++;
+                    }
+                }
+                pc = handler.execute(reg, mem);
+            } else {
+                // Outside memory the Machine fetches a NOOP
+                pc = (pc + 1) % MEMORY_SIZE;
+            }
+            count++;
+
+            if (stopped) {
+                break;
+            }
+        }
+
+        // Register 0 must always stay zero (hardware constraint)
+        reg[0] = 0;
+
+        totalExecuted += count;
+        target.setPc(pc);
+        target.addExecuted(count);
+        if (stopped) {
+            target.halt(faulted ? HaltReason.MEMORY_FAULT : HaltReason.HALT);
+        }
+    }
+
+    @Override
+    public void invalidate(int address) {
+        if (slots != null) {
+            slots[address] = null;
+            // A pair starting one word earlier contains this word too
+            if (fusion && address > 0) {
+                slots[address - 1] = null;
+            }
+        }
+    }
+
+    /**
+     * Builds a report of how many executed instructions ran inside fused pairs.
+     *
+     * @return multi-line report
+     */
+    public String getFusionReport() {
+        long fused = 0;
+        StringBuilder sb = new StringBuilder();
+        for (int kind = 0; kind < FUSED_NAMES.length; kind++) {
+            fused += 2 * fusedExecuted[kind];
+            sb.append("\t").append(FUSED_NAMES[kind]).append(": ")
+              .append(fusedExecuted[kind]).append(" pairs\n");
+        }
+        double rate = totalExecuted == 0 ? 0 : 100.0 * fused / totalExecuted;
+        return String.format("fusion hit rate: %d of %d instructions (%.1f%%) ran fused%n",
+                fused, totalExecuted, rate) + sb;
+    }
+
+    /**
+     * Compiles the instruction at pc, fusing it with the next one when enabled.
+     *
+     * @param mem Memory holding the program
+     * @param pc  Address of the instruction
+     * @return handler that executes it and returns the next PC
+     */
+    private Handler compile(Memory mem, int pc) {
+        Handler single = compile(mem.read(pc), pc);
+        if (fusion && pc + 1 < MEMORY_SIZE) {
+            Handler pair = fuse(mem.read(pc), mem.read(pc + 1), pc, single);
+            if (pair != null) {
+                return pair;
+            }
+        }
+        return single;
+    }
+
+    /**
+     * Peephole: recognizes a fusable instruction pair.
+     *
+     * @param first  Instruction at pc
+     * @param second Instruction at pc + 1
+     * @param pc     Address of the first instruction
+     * @param single Unfused handler of the first instruction
+     * @return fused handler, or null if the pair is not a known idiom
+     */
+    private Handler fuse(int first, int second, int pc, Handler single) {
+        int op1 = (first >>> 22) & 0b111;
+        int a1 = (first >>> 19) & 0b111;
+        int b1 = (first >>> 16) & 0b111;
+        int d1 = first & 0b111;
+        int op2 = (second >>> 22) & 0b111;
+        int a2 = (second >>> 19) & 0b111;
+        int b2 = (second >>> 16) & 0b111;
+        int d2 = second & 0b111;
+        int next = (pc + 2) % MEMORY_SIZE;
+
+        if (op1 == Decoder.NAND && a1 == 0 && b1 == 0 && d1 != 0 && op2 == Decoder.ADD && d2 != 0) {
+            return new MinusOneAdd(d1, a2, b2, d2, next, single);
+        }
+        if (op1 == Decoder.LW && a1 == 0 && b1 != 0 && (short) first >= 0
+                && op2 == Decoder.ADD && d2 != 0) {
+            return new LoadConstantAdd((short) first, b1, a2, b2, d2, next, single);
+        }
+        if (op1 == Decoder.ADD && d1 != 0 && op2 == Decoder.BEQ) {
+            int target = pc + 2 + (short) second;
+            return new AddBranch(a1, b1, d1, a2, b2, target, next, single);
+        }
+        if (op1 == Decoder.NAND && d1 != 0 && op2 == Decoder.NAND && d2 != 0) {
+            return new NandNand(a1, b1, d1, a2, b2, d2, next, single);
+        }
+        return null;
+    }
+
+    /**
+     * Compiles one instruction word into a specialized handler.
+     *
+     * @param instruction 32-bit machine instruction
+     * @param pc          Address of the instruction
+     * @return handler that executes it and returns the next PC
+     */
+    private Handler compile(int instruction, int pc) {
+        int opcode = (instruction >>> 22) & 0b111;
+        int regA = (instruction >>> 19) & 0b111;
+        int regB = (instruction >>> 16) & 0b111;
+        int offset = (short) (instruction & 0xFFFF);
+        int next = (pc + 1) % MEMORY_SIZE;
+
+        switch (opcode) {
+            case Decoder.ADD:
+            case Decoder.NAND: {
+                int destReg = instruction & 0b111;
+                if (destReg == 0) {
+                    // Writes to register 0 are ignored
+                    return new Noop(next);
+                }
+                return opcode == Decoder.ADD
+                        ? new Add(regA, regB, destReg, next)
+                        : new Nand(regA, regB, destReg, next);
+            }
+
+            case Decoder.LW:
+                if (regB == 0) {
+                    // The interpreter skips the whole load (even the address check)
+                    return new Noop(next);
+                }
+                if (regA == 0) {
+                    // Address is a constant: check it once, here
+                    return offset >= 0 ? new LoadConstant(offset, regB, next) : new Fault(offset, next);
+                }
+                return new Load(regA, regB, offset, next);
+
+            case Decoder.SW:
+                return new Store(regA, regB, offset, next);
+
+            case Decoder.BEQ:
+                if (regA == regB) {
+                    // Always taken
+                    return new Jump(pc + 1 + offset);
+                }
+                return new Branch(regA, regB, pc + 1 + offset, next);
+
+            case Decoder.JALR:
+                return new Jalr(regA, regB, pc + 1, next);
+
+            case Decoder.HALT:
+                return new Halt(next);
+
+            default:
+                return new Noop(next);
+        }
+    }
+
+    /** Reports an invalid LW/SW address and stops, like Itype does. */
+    private int fault(int address, int next) {
+        machine.getErr().println("Invalid memory access at " + address);
+        stopped = true;
+        faulted = true;
+        return next;
+    }
+
+    // --- Handlers ---
+
+    /** One compiled instruction. */
+    private abstract static class Handler {
+        int size = 1;   // number of instructions the handler executes
+
+        /**
+         * Executes the instruction.
+         *
+         * @param reg Register file
+         * @param mem Memory
+         * @return next PC
+         */
+        abstract int execute(int[] reg, Memory mem);
+    }
+
+    private static final class Add extends Handler {
+        private final int regA, regB, destReg, next;
+
+        Add(int regA, int regB, int destReg, int next) {
+            this.regA = regA;
+            this.regB = regB;
+            this.destReg = destReg;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            reg[destReg] = reg[regA] + reg[regB];
+            return next;
+        }
+    }
+
+    private static final class Nand extends Handler {
+        private final int regA, regB, destReg, next;
+
+        Nand(int regA, int regB, int destReg, int next) {
+            this.regA = regA;
+            this.regB = regB;
+            this.destReg = destReg;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            reg[destReg] = ~(reg[regA] & reg[regB]);
+            return next;
+        }
+    }
+
+    private final class Load extends Handler {
+        private final int regA, regB, offset, next;
+
+        Load(int regA, int regB, int offset, int next) {
+            this.regA = regA;
+            this.regB = regB;
+            this.offset = offset;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            int address = reg[regA] + offset;
+            if (address < 0 || address >= MEMORY_SIZE) {
+                return fault(address, next);
+            }
+            reg[regB] = mem.read(address);
+            return next;
+        }
+    }
+
+    private static final class LoadConstant extends Handler {
+        private final int address, regB, next;
+
+        LoadConstant(int address, int regB, int next) {
+            this.address = address;
+            this.regB = regB;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            reg[regB] = mem.read(address);
+            return next;
+        }
+    }
+
+    private final class Store extends Handler {
+        private final int regA, regB, offset, next;
+
+        Store(int regA, int regB, int offset, int next) {
+            this.regA = regA;
+            this.regB = regB;
+            this.offset = offset;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            int address = reg[regA] + offset;
+            if (address < 0 || address >= MEMORY_SIZE) {
+                return fault(address, next);
+            }
+            mem.write(address, reg[regB]);
+            // The word may be code: recompile it when it is next executed
+            machine.invalidate(address);
+            return next;
+        }
+    }
+
+    /** LW from a constant address that is always invalid. */
+    private final class Fault extends Handler {
+        private final int address, next;
+
+        Fault(int address, int next) {
+            this.address = address;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            return fault(address, next);
+        }
+    }
+
+    private static final class Branch extends Handler {
+        private final int regA, regB, target, next;
+
+        Branch(int regA, int regB, int target, int next) {
+            this.regA = regA;
+            this.regB = regB;
+            this.target = target;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            return reg[regA] == reg[regB] ? target : next;
+        }
+    }
+
+    private static final class Jump extends Handler {
+        private final int target;
+
+        Jump(int target) {
+            this.target = target;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            return target;
+        }
+    }
+
+    private static final class Jalr extends Handler {
+        private final int regA, regB, returnAddress, next;
+
+        Jalr(int regA, int regB, int returnAddress, int next) {
+            this.regA = regA;
+            this.regB = regB;
+            this.returnAddress = returnAddress;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            if (regB != 0) {
+                reg[regB] = returnAddress;
+            }
+            // If regA == regB there is no jump (same rule as Jtype)
+            return regA != regB ? reg[regA] : next;
+        }
+    }
+
+    private final class Halt extends Handler {
+        private final int next;
+
+        Halt(int next) {
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            stopped = true;
+            return next;
+        }
+    }
+
+    // --- Superinstructions (two instructions per handler) ---
+
+    /** Base of fused pairs: remembers the unfused handler of the first instruction. */
+    private abstract static class Fused extends Handler {
+        final int kind;         // index into FUSED_NAMES
+        final Handler single;   // first instruction alone (when only one step is left)
+
+        Fused(int kind, Handler single) {
+            this.kind = kind;
+            this.single = single;
+            size = 2;
+        }
+    }
+
+    /** nand 0 0 k ; add a b d */
+    private static final class MinusOneAdd extends Fused {
+        private final int k, regA, regB, destReg, next;
+
+        MinusOneAdd(int k, int regA, int regB, int destReg, int next, Handler single) {
+            super(0, single);
+            this.k = k;
+            this.regA = regA;
+            this.regB = regB;
+            this.destReg = destReg;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            reg[k] = -1;
+            reg[destReg] = reg[regA] + reg[regB];
+            return next;
+        }
+    }
+
+    /** lw 0 k address ; add a b d */
+    private static final class LoadConstantAdd extends Fused {
+        private final int address, k, regA, regB, destReg, next;
+
+        LoadConstantAdd(int address, int k, int regA, int regB, int destReg, int next, Handler single) {
+            super(1, single);
+            this.address = address;
+            this.k = k;
+            this.regA = regA;
+            this.regB = regB;
+            this.destReg = destReg;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            reg[k] = mem.read(address);
+            reg[destReg] = reg[regA] + reg[regB];
+            return next;
+        }
+    }
+
+    /** add a b d ; beq x y target */
+    private static final class AddBranch extends Fused {
+        private final int regA, regB, destReg, branchA, branchB, target, next;
+
+        AddBranch(int regA, int regB, int destReg, int branchA, int branchB, int target, int next,
+                  Handler single) {
+            super(2, single);
+            this.regA = regA;
+            this.regB = regB;
+            this.destReg = destReg;
+            this.branchA = branchA;
+            this.branchB = branchB;
+            this.target = target;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            reg[destReg] = reg[regA] + reg[regB];
+            return reg[branchA] == reg[branchB] ? target : next;
+        }
+    }
+
+    /** nand a b d ; nand x y e */
+    private static final class NandNand extends Fused {
+        private final int regA, regB, destReg, regA2, regB2, destReg2, next;
+
+        NandNand(int regA, int regB, int destReg, int regA2, int regB2, int destReg2, int next,
+                 Handler single) {
+            super(3, single);
+            this.regA = regA;
+            this.regB = regB;
+            this.destReg = destReg;
+            this.regA2 = regA2;
+            this.regB2 = regB2;
+            this.destReg2 = destReg2;
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            reg[destReg] = ~(reg[regA] & reg[regB]);
+            reg[destReg2] = ~(reg[regA2] & reg[regB2]);
+            return next;
+        }
+    }
+
+    private static final class Noop extends Handler {
+        private final int next;
+
+        Noop(int next) {
+            this.next = next;
+        }
+
+        @Override
+        int execute(int[] reg, Memory mem) {
+            return next;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The UndoLog class records recent history of a Machine so that it can run
+ * backwards (Machine.stepBack, Machine.runBackTo). Set it with Machine.setUndoLog;
+ * without one nothing is recorded.
+ *
+ * Two kinds of history are kept:
+ *  - A ring buffer of the last capacity instructions. Each record is three
+ *    ints: the PC before the instruction, the location it overwrote (packed
+ *    as in Writeback) and the old value of that location. Undoing one
+ *    instruction restores exactly those.
+ *  - Snapshots (Machine.checkpoint, which shares memory pages copy-on-write)
+ *    every capacity instructions, at most MAX_SNAPSHOTS of them. Going back
+ *    further than the ring reaches restores the nearest earlier snapshot
+ *    and replays forward from it.
+ *
+ * While the log is set, the Machine executes one instruction at a time (no
+ * engine bursts or loop fast-forward), since every step has to be recorded.
+ */
+public final class UndoLog {
+    public static final int DEFAULT_CAPACITY = 1 << 20;    // instructions (12 MB of records)
+    static final int MAX_SNAPSHOTS = 64;
+
+    // Ring buffer: one record per executed instruction, oldest overwritten first
+    private final int[] pcs;
+    private final int[] writebacks;
+    private final int[] values;
+    private final int mask;
+    private long next;              // records ever pushed (position of the next one)
+    private int size;               // records currently available
+
+    // Snapshots, oldest first, in order of executed count
+    private final ArrayDeque<MachineCheckpoint> snapshots = new ArrayDeque<>();
+    private final long snapshotInterval;
+
+    /** Constructor: keeps the last DEFAULT_CAPACITY instructions */
+    public UndoLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Number of instructions kept in the ring (rounded up to a
+     *                 power of two); also the distance between snapshots
+     */
+    public UndoLog(int capacity) {
+        int rounded = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        pcs = new int[rounded];
+        writebacks = new int[rounded];
+        values = new int[rounded];
+        mask = rounded - 1;
+        snapshotInterval = rounded;
+    }
+
+    /** @return number of instructions that can be undone without a snapshot */
+    public int size() { return size; }
+
+    /** @return number of snapshots kept */
+    public int getSnapshotCount() { return snapshots.size(); }
+
+    /**
+     * Records one instruction, before it executes.
+     *
+     * @param pc        PC of the instruction
+     * @param writeback Location it will overwrite (Writeback.of)
+     * @param value     Current value of that location
+     */
+    void push(int pc, int writeback, int value) {
+        int slot = (int) next & mask;
+        pcs[slot] = pc;
+        writebacks[slot] = writeback;
+        values[slot] = value;
+        next++;
+        if (size <= mask) {
+            size++;
+        }
+    }
+
+    /** Removes the newest record (read it first with the accessors below). */
+    void pop() {
+        next--;
+        size--;
+    }
+
+    /** @return PC of the newest record */
+    int lastPc() { return pcs[(int) (next - 1) & mask]; }
+
+    /** @return overwritten location of the newest record */
+    int lastWriteback() { return writebacks[(int) (next - 1) & mask]; }
+
+    /** @return old value of the newest record */
+    int lastValue() { return values[(int) (next - 1) & mask]; }
+
+    /** Drops every record (after the machine jumped to a snapshot). */
+    void clearRecords() {
+        size = 0;
+    }
+
+    /**
+     * Finds the newest record of an instruction at the given PC.
+     *
+     * @param pc PC to look for
+     * @return number of instructions to undo to get back to it, or 0 if none is recorded
+     */
+    int distanceTo(int pc) {
+        for (int distance = 1; distance <= size; distance++) {
+            if (pcs[(int) (next - distance) & mask] == pc) {
+                return distance;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param executed Current executed count of the machine
+     * @return true if a snapshot should be taken now
+     */
+    boolean snapshotDue(long executed) {
+        return snapshots.isEmpty() || executed >= snapshots.peekLast().executed + snapshotInterval;
+    }
+
+    /**
+     * Adds a snapshot, unless a snapshot of this point or a later one is kept
+     * already (while replaying old history); evicts the oldest beyond MAX_SNAPSHOTS.
+     */
+    void addSnapshot(MachineCheckpoint snapshot) {
+        if (!snapshots.isEmpty() && snapshots.peekLast().executed >= snapshot.executed) {
+            return;
+        }
+        snapshots.addLast(snapshot);
+        if (snapshots.size() > MAX_SNAPSHOTS) {
+            snapshots.removeFirst();
+        }
+    }
+
+    /**
+     * @param executed Executed count
+     * @return the newest snapshot taken before the given count, or null
+     */
+    MachineCheckpoint snapshotBefore(long executed) {
+        Iterator<MachineCheckpoint> newestFirst = snapshots.descendingIterator();
+        while (newestFirst.hasNext()) {
+            MachineCheckpoint snapshot = newestFirst.next();
+            if (snapshot.executed < executed) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    /** @return the oldest snapshot kept, or null */
+    MachineCheckpoint oldestSnapshot() {
+        return snapshots.peekFirst();
+    }
+
+    /** Drops snapshots taken after the given count (the machine went back in time). */
+    void dropSnapshotsAfter(long executed) {
+        while (!snapshots.isEmpty() && snapshots.peekLast().executed > executed) {
+            snapshots.removeLast();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * The Writeback class works out which single location an instruction wrote.
+ * An LC-2K instruction changes at most one register or one memory word
+ * (plus the PC), so tracers only need to record that one location.
+ *
+ * The result is packed into one int: kind (bits 17–16) and index (bits 15–0),
+ * where index is a register number or a memory address.
+ */
+public final class Writeback {
+    public static final int NONE     = 0;   // nothing written (BEQ, HALT, NOOP, writes to reg 0)
+    public static final int REGISTER = 1;   // a register was written
+    public static final int MEMORY   = 2;   // a memory word was written (SW)
+
+    private Writeback() {
+    }
+
+    /**
+     * Finds the location written by an instruction that has just executed.
+     * This works on the state after execution because the only instruction
+     * that needs a register to compute its target (SW) never changes registers.
+     *
+     * @param instruction The instruction word that executed
+     * @param registers   Register file after execution
+     * @param memorySize  Size of memory (SW outside of it did not write)
+     * @return packed kind/index
+     */
+    public static int of(int instruction, int[] registers, int memorySize) {
+        int opcode = (instruction >>> 22) & 0b111;
+        int regA = (instruction >>> 19) & 0b111;
+        int regB = (instruction >>> 16) & 0b111;
+
+        switch (opcode) {
+            case Decoder.ADD:
+            case Decoder.NAND:
+                return register(instruction & 0b111);
+
+            case Decoder.LW:
+            case Decoder.JALR:
+                return register(regB);
+
+            case Decoder.SW: {
+                int address = registers[regA] + (short) (instruction & 0xFFFF);
+                if (address < 0 || address >= memorySize) {
+                    return NONE;
+                }
+                return (MEMORY << 16) | address;
+            }
+
+            default:
+                return NONE;
+        }
+    }
+
+    /** @return kind of a packed writeback (NONE, REGISTER or MEMORY) */
+    public static int kind(int writeback) { return writeback >>> 16; }
+
+    /** @return register number or memory address of a packed writeback */
+    public static int index(int writeback) { return writeback & 0xFFFF; }
+
+    private static int register(int reg) {
+        // Register 0 is hard-wired to zero, so writing it changes nothing
+        return reg == 0 ? NONE : (REGISTER << 16) | reg;
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * The BenchmarkPrograms class provides the programs the benchmarks run:
+ * the bundled test programs (read from the repository root) and synthetic
+ * long-running loops.
+ *
+ * Program names:
+ *  - test_Combination, test_Multiplication, test_SumOfArray,
+ *    assembler_correct_test   the bundled .asm files
+ *  - loop      countdown loop: beq/add/beq per iteration
+ *  - memloop   countdown kept in memory: lw/add/sw per iteration
+ *  - large     many copies of test_Combination's body (assembler input only)
+ */
+final class BenchmarkPrograms {
+
+    private BenchmarkPrograms() {
+    }
+
+    /**
+     * Returns the assembly source of a program.
+     *
+     * @param name       Program name (see the class comment)
+     * @param iterations Iteration count of the synthetic loops
+     * @return assembly source
+     */
+    static String source(String name, int iterations) {
+        switch (name) {
+            case "loop":
+                return String.join("\n",
+                        "        lw      0       1       count",
+                        "        lw      0       2       neg1",
+                        "loop    beq     1       0       done",
+                        "        add     1       2       1",
+                        "        beq     0       0       loop",
+                        "done    halt",
+                        "count   .fill   " + iterations,
+                        "neg1    .fill   -1",
+                        "");
+            case "memloop":
+                return String.join("\n",
+                        "        lw      0       2       neg1",
+                        "loop    lw      0       1       count",
+                        "        beq     1       0       done",
+                        "        add     1       2       1",
+                        "        sw      0       1       count",
+                        "        beq     0       0       loop",
+                        "done    halt",
+                        "count   .fill   " + iterations,
+                        "neg1    .fill   -1",
+                        "");
+            case "large":
+                return large(iterations);
+            default:
+                return read(name + ".asm");
+        }
+    }
+
+    /**
+     * Returns a program's source in the MiniAssembler dialect ('#' comments only).
+     *
+     * @param name       Program name
+     * @param iterations Iteration count of the synthetic loops
+     * @return assembly source without "//" comments
+     */
+    static String miniSource(String name, int iterations) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : source(name, iterations).split("\n", -1)) {
+            int comment = line.indexOf("//");
+            sb.append(comment >= 0 ? line.substring(0, comment) : line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Assembles a program.
+     *
+     * @param name       Program name
+     * @param iterations Iteration count of the synthetic loops
+     * @return the assembled program (always successful)
+     */
+    static AssemblyResult assemble(String name, int iterations) {
+        AssemblyResult result = new AssemblerCore().assemble(source(name, iterations));
+        if (!result.isSuccess()) {
+            throw new IllegalStateException(name + ": " + result.getFirstError());
+        }
+        return result;
+    }
+
+    /** @return a source of about the given number of lines, with label references throughout */
+    private static String large(int lines) {
+        StringBuilder sb = new StringBuilder();
+        int copy = 0;
+        while (sb.length() == 0 || countLines(sb) < lines) {
+            // Every copy gets its own labels, and jumps back to the previous copy's start
+            String prefix = "b" + copy;
+            sb.append(prefix).append("s    lw      0       1       ").append(prefix).append("n\n")
+              .append("        lw      0       2       ").append(prefix).append("m\n")
+              .append("        add     1       2       3\n")
+              .append("        nand    1       2       4\n")
+              .append("        beq     3       4       ").append(copy == 0 ? prefix + "s" : "b" + (copy - 1) + "s").append('\n')
+              .append("        sw      0       3       ").append(prefix).append("n\n")
+              .append("        noop\n")
+              .append(prefix).append("n    .fill   ").append(copy).append('\n')
+              .append(prefix).append("m    .fill   -").append(copy).append('\n');
+            copy++;
+        }
+        sb.append("        halt\n");
+        return sb.toString();
+    }
+
+    private static int countLines(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String read(String file) {
+        try {
+            List<String> lines = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+            return String.join("\n", lines) + "\n";
+        } catch (IOException e) {
+            throw new UncheckedIOException("Benchmarks must run from the repository root", e);
+        }
+    }
+}
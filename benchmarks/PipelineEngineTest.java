@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The PipelineEngineTest class checks the PipelineEngine against the Decoder
+ * interpreter on every program bundled in the repository root: each .obj
+ * file, and each .asm file that assembles. It runs under "mvn test".
+ *
+ * There is no test framework on the classpath, so this is a plain class that
+ * Surefire runs as a POJO test: every public test* method is a test, and a
+ * thrown AssertionError fails it.
+ *
+ * Programs that never halt (assembler_correct_result.obj) are compared at
+ * the instruction limit.
+ */
+public class PipelineEngineTest {
+    private static final long LIMIT = 2_000_000L;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    /** Every bundled object file runs to the same state on the pipeline. */
+    public void testBundledObjectFiles() throws IOException {
+        int checked = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("."), "*.obj")) {
+            for (Path file : files) {
+                Machine program = newMachine();
+                program.setInstructionCount(ObjectLoader.load(file, program.getMemory()));
+                check(file.getFileName().toString(), program);
+                checked++;
+            }
+        }
+        if (checked == 0) {
+            throw new AssertionError("no .obj files found in " + Paths.get("").toAbsolutePath());
+        }
+    }
+
+    /** Every bundled assembly program that assembles runs to the same state on the pipeline. */
+    public void testBundledSources() throws IOException {
+        int checked = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("."), "*.asm")) {
+            for (Path file : files) {
+                AssemblyResult assembled = new AssemblerCore().assemble(
+                        new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                if (!assembled.isSuccess()) {
+                    continue;       // the assembler's error tests
+                }
+                Machine program = newMachine();
+                assembled.copyTo(program.getMemory());
+                program.setInstructionCount(assembled.getWordCount());
+                check(file.getFileName().toString(), program);
+                checked++;
+            }
+        }
+        if (checked == 0) {
+            throw new AssertionError("no .asm files found in " + Paths.get("").toAbsolutePath());
+        }
+    }
+
+    /** Running in short bursts (as --every N does) keeps the pipeline full: same state, same cycles. */
+    public void testBurstsMatchSingleRun() throws IOException {
+        Machine program = newMachine();
+        program.setInstructionCount(ObjectLoader.load(Paths.get("output_Combination.obj"), program.getMemory()));
+
+        PipelineEngine single = new PipelineEngine();
+        Machine once = program.fork();
+        once.setEngine(single);
+        once.simulate();
+
+        PipelineEngine bursts = new PipelineEngine();
+        Machine stepped = program.fork();
+        stepped.setEngine(bursts);
+        while (!stepped.isHalted()) {
+            bursts.run(stepped, 7);
+        }
+
+        String difference = PipelineEngine.compare(once, stepped);
+        if (difference != null) {
+            throw new AssertionError("bursts: " + difference);
+        }
+        if (single.getCycles() != bursts.getCycles()) {
+            throw new AssertionError("bursts took " + bursts.getCycles() + " cycles, a single run "
+                    + single.getCycles());
+        }
+    }
+
+    private static Machine newMachine() {
+        Machine machine = new Machine();
+        machine.setPrintInterval(0);
+        machine.setPrintFinalState(false);
+        machine.setOutput(DISCARD, DISCARD);
+        return machine;
+    }
+
+    private static void check(String name, Machine program) {
+        PipelineEngine engine = new PipelineEngine();
+        String difference = PipelineEngine.validate(program, LIMIT, engine);
+        if (difference != null) {
+            throw new AssertionError(name + ": " + difference);
+        }
+        if (engine.getRetired() > 0 && engine.getCycles() < engine.getRetired()) {
+            throw new AssertionError(name + ": " + engine.getCycles() + " cycles for "
+                    + engine.getRetired() + " instructions");
+        }
+    }
+}
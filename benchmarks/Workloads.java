@@ -0,0 +1,163 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+/**
+ * The Workloads class builds the operations measured by the benchmarks in
+ * lc2k.bench.
+ *
+ * JMH only accepts benchmark classes in a named package, and a named package
+ * cannot refer to the simulator's classes in the default package. So every
+ * operation is built here, in the default package, as a Callable; the
+ * benchmarks look the factories up by name once (see lc2k.bench.Workload) and
+ * then only make an interface call per operation.
+ */
+final class Workloads {
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private Workloads() {
+    }
+
+    /**
+     * Machine.simulate on a fresh Machine, like one Simulator invocation.
+     * Printed states go to a discarding stream, so printing measures the
+     * formatting cost, not the console.
+     *
+     * @param program    Program name (see BenchmarkPrograms)
+     * @param printing   Print the state before every instruction and at the end
+     * @param iterations Iteration count of the synthetic loops
+     * @return the operation
+     */
+    static Callable<Object> simulate(String program, boolean printing, int iterations) {
+        AssemblyResult assembled = BenchmarkPrograms.assemble(program, iterations);
+        return () -> {
+            Machine machine = new Machine();
+            assembled.copyTo(machine.getMemory());
+            machine.setInstructionCount(assembled.getWordCount());
+            machine.setOutput(DISCARD, DISCARD);
+            machine.setPrintInterval(printing ? 1 : 0);
+            machine.setPrintFinalState(printing);
+            machine.simulate();
+            return machine;
+        };
+    }
+
+    /**
+     * Decoder.decode over a straight-line block that mixes every opcode except
+     * HALT and JALR (which would stop or leave the block).
+     *
+     * @param block Number of instructions decoded per operation
+     * @return the operation
+     */
+    static Callable<Object> decode(int block) {
+        int data = block + 16;   // LW/SW target, above the block
+        // add, nand, lw, sw, beq (offset 0, falls through either way), noop
+        int[] pattern = {
+                (Decoder.ADD << 22) | (1 << 19) | (2 << 16) | 3,
+                (Decoder.NAND << 22) | (3 << 19) | (1 << 16) | 4,
+                (Decoder.LW << 22) | (0 << 19) | (5 << 16) | data,
+                (Decoder.SW << 22) | (0 << 19) | (3 << 16) | data,
+                (Decoder.BEQ << 22) | (1 << 19) | (2 << 16),
+                Decoder.NOOP << 22,
+        };
+        Machine machine = new Machine();
+        Memory memory = machine.getMemory();
+        for (int address = 0; address < block; address++) {
+            memory.write(address, pattern[address % pattern.length]);
+        }
+        machine.setInstructionCount(block);
+        machine.getRegisters()[1] = 7;
+        machine.getRegisters()[2] = 5;
+        Decoder decoder = new Decoder();
+
+        return () -> {
+            for (int pc = 0; pc < block; pc++) {
+                machine.setPc(pc);
+                machine.setNextPc(pc + 1);
+                decoder.decode(machine);
+            }
+            return machine.getRegisters()[3];
+        };
+    }
+
+    /**
+     * Assembler.convertMC from an in-memory source into an in-memory writer.
+     *
+     * @param program Program name
+     * @param lines   Line count of the large source
+     * @return the operation
+     */
+    static Callable<Object> convertMC(String program, int lines) {
+        String source = BenchmarkPrograms.source(program, lines);
+        return () -> {
+            StringWriter output = new StringWriter(source.length());
+            try (BufferedReader reader = new BufferedReader(new StringReader(source));
+                 BufferedWriter writer = new BufferedWriter(output)) {
+                Assembler.convertMC(reader, writer);
+            }
+            return output;
+        };
+    }
+
+    /**
+     * MiniAssembler.main with real files, the way it runs from the command line.
+     * MiniAssembler only understands '#' comments, so the program's "//"
+     * comments are removed. The caller discards System.out (its "Written
+     * machine code" message).
+     *
+     * @param program Program name
+     * @param lines   Line count of the large source
+     * @return the operation
+     * @throws IOException when the temporary files cannot be created
+     */
+    static Callable<Object> miniAssembler(String program, int lines) throws IOException {
+        Path input = temporaryFile(".asm");
+        Path output = temporaryFile(".obj");
+        Files.writeString(input, BenchmarkPrograms.miniSource(program, lines), StandardCharsets.UTF_8);
+        String[] args = {input.toString(), output.toString()};
+        return () -> {
+            MiniAssembler.main(args);
+            return output;
+        };
+    }
+
+    /**
+     * The Simulator's loader (ObjectLoader.load) on a text .obj file, as written
+     * by the assemblers, or on a binary object file.
+     *
+     * @param program Program name
+     * @param binary  Load the binary format instead of text
+     * @param lines   Line count of the large program
+     * @return the operation
+     * @throws IOException when the object file cannot be written
+     */
+    static Callable<Object> load(String program, boolean binary, int lines) throws IOException {
+        AssemblyResult assembled = BenchmarkPrograms.assemble(program, lines);
+        Path file = temporaryFile(".obj");
+        if (binary) {
+            ObjectLoader.writeBinary(file, assembled.getWords(), assembled.getWordCount());
+        } else {
+            StringBuilder text = new StringBuilder();
+            for (int address = 0; address < assembled.getWordCount(); address++) {
+                text.append(assembled.getWord(address)).append('\n');
+            }
+            Files.writeString(file, text, StandardCharsets.US_ASCII);
+        }
+        int[] memory = new int[Machine.MEMORY_SIZE];
+        return () -> ObjectLoader.load(file, memory);
+    }
+
+    private static Path temporaryFile(String suffix) throws IOException {
+        Path file = Files.createTempFile("lc2k-bench", suffix);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+}
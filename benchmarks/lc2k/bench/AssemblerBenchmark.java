@@ -0,0 +1,66 @@
+package lc2k.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The two assemblers: Assembler.convertMC in memory, and MiniAssembler.main
+ * with real files (its System.out message is discarded while measuring).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssemblerBenchmark {
+
+    @Param({"test_Combination", "test_Multiplication", "test_SumOfArray", "assembler_correct_test", "large"})
+    public String program;
+
+    /** Line count of the large source */
+    @Param({"20000"})
+    public int lines;
+
+    private Callable<Object> convertMC;
+    private Callable<Object> miniAssembler;
+    private PrintStream systemOut;
+
+    @Setup
+    public void setUp() throws Exception {
+        convertMC = Workload.create("convertMC", program, lines);
+        miniAssembler = Workload.create("miniAssembler", program, lines);
+        systemOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(systemOut);
+    }
+
+    @Benchmark
+    public Object convertMC() throws Exception {
+        return convertMC.call();
+    }
+
+    @Benchmark
+    public Object miniAssembler() throws Exception {
+        return miniAssembler.call();
+    }
+}
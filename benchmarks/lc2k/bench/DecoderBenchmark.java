@@ -0,0 +1,43 @@
+package lc2k.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoder.decode dispatch: one operation decodes and executes one instruction
+ * of a block that mixes ADD, NAND, LW, SW, BEQ and NOOP.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecoderBenchmark {
+    private static final int BLOCK = 1024;
+
+    private Callable<Object> decode;
+
+    @Setup
+    public void setUp() throws Exception {
+        decode = Workload.create("decode", BLOCK);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public Object decode() throws Exception {
+        return decode.call();
+    }
+}
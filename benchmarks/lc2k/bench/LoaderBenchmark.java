@@ -0,0 +1,51 @@
+package lc2k.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Simulator's loader (ObjectLoader.load) on text and binary object files,
+ * for a small and a large program.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoaderBenchmark {
+
+    @Param({"test_Combination", "large"})
+    public String program;
+
+    @Param({"text", "binary"})
+    public String format;
+
+    /** Line count of the large program */
+    @Param({"20000"})
+    public int lines;
+
+    private Callable<Object> load;
+
+    @Setup
+    public void setUp() throws Exception {
+        load = Workload.create("load", program, format.equals("binary"), lines);
+    }
+
+    @Benchmark
+    public Object load() throws Exception {
+        return load.call();
+    }
+}
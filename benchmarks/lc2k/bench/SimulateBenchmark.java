@@ -0,0 +1,52 @@
+package lc2k.bench;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Machine.simulate over the bundled programs and synthetic loops, with the
+ * per-instruction state printing on (default Simulator mode) and off (--quiet).
+ * One operation is a whole run on a fresh Machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimulateBenchmark {
+
+    @Param({"test_Combination", "test_Multiplication", "test_SumOfArray", "loop", "memloop"})
+    public String program;
+
+    @Param({"true", "false"})
+    public boolean printing;
+
+    /** Iterations of the synthetic loops */
+    @Param({"10000"})
+    public int iterations;
+
+    private Callable<Object> simulate;
+
+    @Setup
+    public void setUp() throws Exception {
+        simulate = Workload.create("simulate", program, printing, iterations);
+    }
+
+    @Benchmark
+    public Object simulate() throws Exception {
+        return simulate.call();
+    }
+}
@@ -0,0 +1,39 @@
+package lc2k.bench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+
+/**
+ * Looks up the operations built by the default-package Workloads class
+ * (named packages cannot refer to it directly).
+ */
+final class Workload {
+
+    private Workload() {
+    }
+
+    /**
+     * Calls the Workloads factory with the given name.
+     *
+     * @param factory Name of the static factory method
+     * @param args    Its arguments
+     * @return the operation to benchmark
+     * @throws Exception whatever the factory throws
+     */
+    @SuppressWarnings("unchecked")
+    static Callable<Object> create(String factory, Object... args) throws Exception {
+        Class<?> workloads = Class.forName("Workloads");
+        for (Method method : workloads.getDeclaredMethods()) {
+            if (method.getName().equals(factory) && method.getParameterCount() == args.length) {
+                method.setAccessible(true);
+                try {
+                    return (Callable<Object>) method.invoke(null, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+        throw new NoSuchMethodException("Workloads." + factory);
+    }
+}